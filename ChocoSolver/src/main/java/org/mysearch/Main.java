@@ -1,23 +1,47 @@
 package org.mysearch;
 
+import org.chocosolver.solver.Cause;
 import org.chocosolver.solver.Model;
+import org.chocosolver.solver.ParallelPortfolio;
 import org.chocosolver.solver.Solution;
 import org.chocosolver.solver.Solver;
 import org.chocosolver.solver.constraints.extension.Tuples;
+import org.chocosolver.solver.exception.ContradictionException;
+import org.chocosolver.solver.search.limits.FailCounter;
 import org.chocosolver.solver.search.strategy.Search;
 import org.chocosolver.solver.search.strategy.selectors.values.IntDomainMin;
 import org.chocosolver.solver.search.strategy.selectors.variables.InputOrder;
 import org.chocosolver.solver.search.strategy.strategy.AbstractStrategy;
 import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.constraints.AllDistanceGT;
 import org.mysearch.constraints.DistanceGT;
+import org.mysearch.constraints.DistanceTable;
+import org.mysearch.constraints.Element2D;
+import org.mysearch.constraints.SupportTable;
 import org.mysearch.strategy.*;
 
 import org.mysearch.util.*;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import static org.chocosolver.solver.search.strategy.Search.domOverWDegSearch;
 
@@ -27,6 +51,12 @@ public class Main {
     private static final String CSV_PATH = "experiments.csv";
     private static boolean TRACK_PM = false;   // enable/disable pruning metrics
     private static String SEED = "0";
+    private static boolean SYMMETRY_BREAKING = true;   // disable with --no-symmetry
+    private static boolean RANKS = false;              // rank-compressed distances (--ranks)
+    private static boolean SAC = false;                // singleton-consistency preprocessing (--sac)
+    private static boolean TRIANGLE = false;           // upper-triangle distance storage (--triangle)
+    private static GreedyWarmStart.Result WARM_START = null;   // greedy/GRASP incumbent (--warm-start=ms)
+    private static long LNS_FAILS = 0;                 // fail limit per LNS neighbourhood (--lns, --lns-fails=N), 0 = off
 
 
     static boolean hasFlag(String[] args, String flag) {
@@ -35,6 +65,14 @@ public class Main {
         return false;
     }
 
+    static long flagValue(String[] args, String prefix, long def) {
+        if (args == null) return def;
+        for (String a : args) {
+            if (a.startsWith(prefix + "=")) return Long.parseLong(a.substring(prefix.length() + 1));
+        }
+        return def;
+    }
+
     public static void main(String[] args) throws IOException {
         if (args.length < 1) {
             System.out.println("Usage: java Main <file_path>");
@@ -48,7 +86,6 @@ public class Main {
         System.out.println("\n------------------------------------------------------------------------------------------");
         System.out.println("Filename " + file);
         String ptype = args[1];
-        boolean pruneBool = false;
         String ordering = args[2];
         String decimalPoints = args[3];
 
@@ -58,7 +95,15 @@ public class Main {
         if(restartOnSol) System.out.println("Restarts on solution enabled.");
         boolean pruningHeuristic = hasFlag(args, "--prune");
         if(pruningHeuristic) System.out.println("Heuristic pruning is enabled.");
-        int solvepDD = 0;
+        SYMMETRY_BREAKING = !hasFlag(args, "--no-symmetry");
+        RANKS = hasFlag(args, "--ranks");
+        SAC = hasFlag(args, "--sac");
+        TRIANGLE = hasFlag(args, "--triangle");
+        if (hasFlag(args, "--lns")) LNS_FAILS = flagValue(args, "--lns-fails", 200L);
+        if(RANKS) System.out.println("Rank-compressed distances enabled.");
+        boolean incremental = hasFlag(args, "--incremental");
+        if(incremental) System.out.println("Incremental DistanceGT propagation is enabled.");
+        int portfolio = (int) flagValue(args, "--portfolio", 1);
 
 
 
@@ -66,18 +111,28 @@ public class Main {
 
         DataReader.DistanceData data = null;
         try {
+            data = loadData(file, decimalPoints);
+            if (data == null) return;      // proven infeasible while preprocessing
+            long warmStartMs = flagValue(args, "--warm-start", 0L);
+            if (warmStartMs > 0) WARM_START = warmStart(data, warmStartMs);
             if (ptype.equals("pDD")){
-                data = DataReader.readDistanceAndConstraints(file, decimalPoints);
-                solvepDDModel(data, ordering, restartOnSol, pruningHeuristic);
+                solvepDDModel(data, ordering, restartOnSol, pruningHeuristic, hasFlag(args, "--element2d"));
             } else if (ptype.equals("pDDTernary")) {
-                data = DataReader.readDistanceAndConstraints(file, decimalPoints);
-                solvepDDTernaryModel(data, ordering, restartOnSol, pruningHeuristic);
+                if (portfolio > 1) solvepDDTernaryPortfolio(data, portfolio, pruningHeuristic, incremental, false);
+                else solvepDDTernaryModel(data, ordering, restartOnSol, pruningHeuristic, incremental, false);
+            } else if (ptype.equals("pDDGlobal")) {
+                if (portfolio > 1) solvepDDTernaryPortfolio(data, portfolio, pruningHeuristic, incremental, true);
+                else solvepDDTernaryModel(data, ordering, restartOnSol, pruningHeuristic, incremental, true);
+            } else if (ptype.equals("pDDDicho")) {
+                solvepDDDichotomic(data, ordering, flagValue(args, "--probe-nodes", 1_000_000L));
+            } else if (ptype.equals("pDDEPS")) {
+                int threads = (int) flagValue(args, "--threads", Runtime.getRuntime().availableProcessors());
+                solvepDDEPS(data, ordering, threads, (int) flagValue(args, "--eps-subproblems", 30L * threads));
             } else if (ptype.equals("pDDBinary")) {
-                data = DataReader.readDistanceAndConstraints(file, decimalPoints);
-                solvepDDBinaryModel(data, ordering);
+                if (portfolio > 1) solvepDDBinaryPortfolio(data, portfolio, pruningHeuristic);
+                else solvepDDBinaryModel(data, ordering, pruningHeuristic);
             } else if (ptype.equals("pDDTable2")) {
-            data = DataReader.readDistanceAndConstraints(file, decimalPoints);
-            solvepDDTableInsteadOFElementModel(data, pruneBool,  ordering);
+            solvepDDTableInsteadOFElementModel(data, ordering, hasFlag(args, "--compact-table"));
             }
             else
             {
@@ -90,27 +145,232 @@ public class Main {
 
     }
 
-    private static void solvepDDModel(DataReader.DistanceData data, String ordering, boolean restartOnSol, boolean pruningHeuristic) {
+    private static DataReader.DistanceData loadData(String file, String decimalPoints) throws IOException {
+        DataReader.DistanceData data = DataReader.readDistanceAndConstraints(file, decimalPoints, TRIANGLE);
+        if (RANKS) {
+            data = data.toRanks();
+            System.out.println("Distances compressed to " + data.rankValues.length + " distinct ranks");
+        }
+        System.out.println("Distance matrix: " + data.distances.describe());
+        int symmetries = symmetryPairs(data).size();
+        if (SYMMETRY_BREAKING && symmetries > 0) {
+            System.out.println("Symmetry breaking: " + symmetries + " ordering constraints on interchangeable facilities.");
+        }
+        if (SAC) data = singletonConsistency(data);
+        return data;
+    }
+
+    /**
+     * Singleton consistency on the facility domains. Every assignment F[i] = v is probed by
+     * propagation alone over the d_cons DistanceGT constraints (and symmetry breaking), and
+     * removed when it fails. Probes run in parallel on all cores, each thread on its own copy
+     * of the model; rounds repeat on the reduced domains until no value is removed.
+     * Returns null when the instance is proven infeasible.
+     */
+    private static DataReader.DistanceData singletonConsistency(DataReader.DistanceData data) {
+        int F = data.facilities;
+        int P = data.points;
+        DistanceMatrix distanceMatrix = data.distances;
+        long startTime = System.currentTimeMillis();
+
+        int[][] domains = new int[F][];
+        long before = 0;
+        for (int i = 0; i < F; i++) {
+            domains[i] = data.facilityDomain(i);
+            before += domains[i].length;
+        }
+
+        long after = before;
+        int rounds = 0;
+        boolean changed = true;
+        while (changed) {
+            rounds++;
+            DataReader.DistanceData current = data.withFacilityDomains(domains);
+            ThreadLocal<IntVar[]> probes = ThreadLocal.withInitial(() -> probeModel(current, distanceMatrix));
+            if (probes.get() == null) {
+                System.out.println("Singleton consistency: instance is infeasible.");
+                return null;
+            }
+
+            boolean[] failed = new boolean[F * P];
+            IntStream.range(0, F)
+                    .flatMap(i -> Arrays.stream(current.facilityDomain(i)).map(v -> i * P + v))
+                    .parallel()
+                    .forEach(iv -> {
+                        IntVar[] F_vars = probes.get();
+                        Model model = F_vars[0].getModel();
+                        model.getEnvironment().worldPush();
+                        try {
+                            F_vars[iv / P].instantiateTo(iv % P, Cause.Null);
+                            model.getSolver().propagate();
+                        } catch (ContradictionException e) {
+                            model.getSolver().getEngine().flush();
+                            failed[iv] = true;
+                        }
+                        model.getEnvironment().worldPop();
+                    });
+
+            changed = false;
+            for (int i = 0; i < F; i++) {
+                final int base = i * P;
+                int[] kept = Arrays.stream(domains[i]).filter(v -> !failed[base + v]).toArray();
+                if (kept.length < domains[i].length) {
+                    after -= domains[i].length - kept.length;
+                    domains[i] = kept;
+                    changed = true;
+                }
+                if (kept.length == 0) {
+                    System.out.println("Singleton consistency: instance is infeasible (F[" + i + "] has no location).");
+                    return null;
+                }
+            }
+        }
+        System.out.println("Singleton consistency: removed " + (before - after) + " of " + before + " facility values ("
+                + String.format("%.1f", 100.0 * (before - after) / before) + "%) in " + rounds + " rounds   "
+                + ((System.currentTimeMillis() - startTime)/1000) + "s");
+        return data.withFacilityDomains(domains);
+    }
+
+    /** Propagation-only copy of the d_cons constraints at its root fixpoint, or null if the root fails. */
+    private static IntVar[] probeModel(DataReader.DistanceData data, DistanceMatrix distanceMatrix) {
+        int F = data.facilities;
+        int[] dCons = data.flatConstraints;
+        Model model = new Model("pDD probe");
+        IntVar[] F_vars = facilityVars(model, data);
+        postSymmetryBreaking(model, F_vars, data);
+        for (int i = 0; i < F - 1; i++) {
+            for (int j = i + 1; j < F; j++) {
+                model.post(new DistanceGT(F_vars[i], F_vars[j], distanceMatrix, dCons[i * F + j]));
+            }
+        }
+        try {
+            model.getSolver().propagate();
+        } catch (ContradictionException e) {
+            return null;
+        }
+        return F_vars;
+    }
+
+    /** Switches the solver to LNS over the facility variables when --lns is given; null otherwise. */
+    private static PDDNeighborhood useLNS(Model model, IntVar[] F_vars, DistanceMatrix distanceMatrix) {
+        if (LNS_FAILS <= 0) return null;
+        System.out.println("Using LNS (fail limit per neighbourhood: " + LNS_FAILS + ")");
+        PDDNeighborhood lns = new PDDNeighborhood(F_vars, distanceMatrix, Long.parseLong(SEED));
+        model.getSolver().setLNS(lns, new FailCounter(model, LNS_FAILS));
+        return lns;
+    }
+
+    private static GreedyWarmStart.Result warmStart(DataReader.DistanceData data, long budgetMs) {
+        long startTime = System.currentTimeMillis();
+        GreedyWarmStart.Result ws = GreedyWarmStart.run(data, budgetMs, Runtime.getRuntime().availableProcessors());
+        if (ws == null) {
+            System.out.println("Warm start: no solution satisfying d_cons found.");
+        } else if (!fitsModel(data, ws.locations)) {
+            System.out.println("Warm start: obj " + data.distanceValue(ws.value)
+                    + " is outside the facility domains or the symmetry order; not used.");
+            return null;
+        } else {
+            System.out.println("Warm start: obj " + data.distanceValue(ws.value) + " after " + ws.constructions
+                    + " constructions   " + ((System.currentTimeMillis() - startTime)/1000) + "s");
+        }
+        return ws;
+    }
+
+    /** True when 'locations' is a solution of the models: domains, d_cons and symmetry breaking. */
+    private static boolean fitsModel(DataReader.DistanceData data, int[] locations) {
+        int F = data.facilities;
+        for (int i = 0; i < F; i++) {
+            if (Arrays.binarySearch(data.facilityDomain(i), locations[i]) < 0) return false;
+            for (int j = i + 1; j < F; j++) {
+                if (data.distances.get(locations[i], locations[j]) <= data.flatConstraints[i * F + j]) return false;
+            }
+        }
+        if (SYMMETRY_BREAKING) {
+            for (int[] pair : symmetryPairs(data)) {
+                int a = locations[pair[0]], b = locations[pair[1]];
+                if (data.flatConstraints[pair[0] * F + pair[1]] >= 0 ? a >= b : a > b) return false;
+            }
+        }
+        return true;
+    }
+
+    /** Posts minDist >= warm-start objective and hints the warm-start locations. */
+    private static void seedWarmStart(Model model, IntVar[] F_vars, IntVar minDist) {
+        if (WARM_START == null) return;
+        model.arithm(minDist, ">=", WARM_START.value).post();
+        hintWarmStart(model, F_vars);
+    }
+
+    /** Raises the shared threshold to the warm-start objective and hints the warm-start locations. */
+    private static void seedWarmStart(Model model, IntVar[] F_vars, SharedBest minDist) {
+        if (WARM_START == null) return;
+        minDist.raiseTo(WARM_START.value);
+        hintWarmStart(model, F_vars);
+    }
+
+    private static void hintWarmStart(Model model, IntVar[] F_vars) {
+        for (int i = 0; i < F_vars.length; i++) {
+            model.getSolver().addHint(F_vars[i], WARM_START.locations[i]);
+        }
+    }
+
+    /** Facility variables F[0..F), restricted to the preprocessed domains when there are some. */
+    private static IntVar[] facilityVars(Model model, DataReader.DistanceData data) {
+        if (data.facilityDomains == null) {
+            return model.intVarArray("F", data.facilities, 0, data.points - 1);
+        }
+        IntVar[] F_vars = new IntVar[data.facilities];
+        for (int i = 0; i < data.facilities; i++) {
+            F_vars[i] = model.intVar("F[" + i + "]", data.facilityDomains[i]);
+        }
+        return F_vars;
+    }
+
+    private static void solvepDDModel(DataReader.DistanceData data, String ordering, boolean restartOnSol, boolean pruningHeuristic, boolean element2d) {
         System.out.println("Model with Element Constraints");
+        if (element2d) System.out.println("Direct 2D element: FF = dist[F1][F2], no index variables.");
+        BuildPhases phases = new BuildPhases();
 
         int F = data.facilities;
         int P = data.points;
-        int[] distances = data.flatDistances;
         int[] dCons = data.flatConstraints;
 
 
-        int[][] distanceMatrix = unflatten(distances, P, P);
+        DistanceMatrix distanceMatrix = data.distances;
+        int[] distances = null;                           // plain table for element(), not needed by Element2D
+        if (element2d) phases.run("distance index", () -> DistanceIndex.of(distanceMatrix));
+        else distances = phases.call("flat table", distanceMatrix::toFlatArray);
+        phases.begin("posting");
 
 
         Model model = new Model("P-Dispersion with Distance Contraints");
 
-        IntVar[] F_vars = model.intVarArray("F", F, 0, P - 1);
+        IntVar[] F_vars = facilityVars(model, data);
+
+        postSymmetryBreaking(model, F_vars, data);
 
         List<IntVar> FF = new ArrayList<>();
+        int[] domain = distanceMatrix.distinctValues();    // sorted, shared by every FF
         int idx = 0;
         for (int f1 = 0; f1 < F - 1; f1++) {
             for (int f2 = f1 + 1; f2 < F; f2++) {
-                IntVar ff = model.intVar("FF_" + idx, Arrays.stream(distances).distinct().toArray());
+                if (element2d) {
+                    // ff > d_cons[i][j] as the domain itself: the distinct distances above d_cons
+                    int dlb = dCons[f1 * F + f2];
+                    int from = Arrays.binarySearch(domain, dlb + 1);
+                    if (from < 0) from = -from - 1;
+                    if (from == domain.length) {
+                        System.out.println("No distance exceeds d_cons[" + f1 + "][" + f2 + "]: the instance is infeasible.");
+                        return;
+                    }
+                    IntVar ff = model.intVar("FF_" + idx, Arrays.copyOfRange(domain, from, domain.length));
+                    FF.add(ff);
+                    new Element2D(F_vars[f1], F_vars[f2], ff, distanceMatrix).post();
+                    idx++;
+                    continue;
+                }
+
+                IntVar ff = model.intVar("FF_" + idx, domain);
                 FF.add(ff);
 
                 IntVar index = model.intVar("index_" + f1 + "_" + f2, 0, P * P - 1);
@@ -124,9 +384,12 @@ public class Main {
             }
         }
         // Objective: maximize the minimum distance
-        IntVar minDist = model.intVar("minDist", 0, Arrays.stream(distances).max().getAsInt());
+        IntVar minDist = model.intVar("minDist", 0, distanceMatrix.max());
         model.min(minDist, FF.toArray(new IntVar[0])).post();
         model.setObjective(Model.MAXIMIZE, minDist);
+        seedWarmStart(model, F_vars, minDist);
+        phases.end();
+        System.out.println(phases + "   " + model.getNbVars() + " variables, " + model.getNbCstrs() + " constraints");
 
 
         Solver solver = model.getSolver();
@@ -141,15 +404,21 @@ public class Main {
         );
             solver.setSearch(orderingStrategy);
         }else{
-            orderingStrategy = domOverWDegSearch(F_vars);
+            orderingStrategy = facilityStrategy(ordering, model, F_vars, data);
             solver.setSearch(orderingStrategy);
         }
+        StrategyWrapperPDDTernary cut = null;
+        if (pruningHeuristic) {
+            cut = new StrategyWrapperPDDTernary(F_vars, minDist, distanceMatrix, orderingStrategy);
+            solver.setSearch(cut);
+        }
 
 
         if (restartOnSol) {
             System.out.println("Using restarts on solutions");
             solver.setRestartOnSolutions();
         }
+        PDDNeighborhood lns = useLNS(model, F_vars, distanceMatrix);
 
         solver.limitTime("3600s");
 
@@ -167,62 +436,82 @@ public class Main {
             endTime = System.currentTimeMillis();
             sol.record();
             solindex++;
-            System.out.println("#" + solindex + "   obj: " + sol.getIntVal(minDist) + "   " + ((endTime - startTime) / 1000) + "s");
+            System.out.println("#" + solindex + "   obj: " + data.distanceValue(sol.getIntVal(minDist)) + "   " + ((endTime - startTime) / 1000) + "s");
         }
         System.out.print("\n");
         solver.printStatistics();
+        if (lns != null) System.out.print(lns.statistics());
+        if (TRACK_PM && cut != null) System.out.print(cut.statistics());
 
     }
 
-    private static void solvepDDTableInsteadOFElementModel(DataReader.DistanceData data, boolean pruningHeuristic, String ordering) {
+    private static void solvepDDTableInsteadOFElementModel(DataReader.DistanceData data, String ordering, boolean compactTable) {
         System.out.println("Model with Table Constraints");
+        if (compactTable) System.out.println("Compact tables: pairs with the same d_lb share one tuple set.");
 
         int F = data.facilities;
         int P = data.points;
-        int[] distances = data.flatDistances;
         int[] dCons = data.flatConstraints;
 
 
-        int[][] distanceMatrix = unflatten(distances, P, P);
-
+        DistanceMatrix distanceMatrix = data.distances;
+
+        BuildPhases phases = new BuildPhases();
+        Map<Integer, Tuples> tuplesByDlb = new HashMap<>();
+        if (compactTable) {
+            precomputeSupports(data, phases);
+        } else {
+            // One tuple set per distinct d_cons, built in parallel and shared by every pair with it
+            int[] dlbs = IntStream.range(0, F * F).filter(k -> k / F < k % F)
+                    .map(k -> dCons[k]).distinct().toArray();
+            Tuples[] built = phases.call("tuples (" + dlbs.length + " thresholds)", () -> Arrays.stream(dlbs).parallel()
+                    .mapToObj(dlb -> pairTuples(distanceMatrix, dlb))
+                    .toArray(Tuples[]::new));
+            for (int i = 0; i < dlbs.length; i++) tuplesByDlb.put(dlbs[i], built[i]);
+        }
+        phases.begin("posting");
 
         Model model = new Model("P-Dispersion with Distance Contraints");
         List<IntVar> FF = new ArrayList<>();
-        IntVar[] F_vars = model.intVarArray("F", F, 0, P - 1);
+        IntVar[] F_vars = facilityVars(model, data);
+        postSymmetryBreaking(model, F_vars, data);
 
         int idx = 0;
-        int maxDist = Arrays.stream(distances).max().getAsInt();
+        int maxDist = distanceMatrix.max();
+        Set<Integer> sharedTupleSets = new HashSet<>();
 
         for (int f1 = 0; f1 < F - 1; f1++) {
             for (int f2 = f1 + 1; f2 < F; f2++) {
 
-                IntVar ff = model.intVar("FF_" + idx, 0, maxDist);
-                FF.add(ff);
-
                 int dlb = dCons[f1 * F + f2];
-                Tuples allowed = new Tuples(true);
-
-
-                for (int loc1 = 0; loc1 < P; loc1++) {
-                    for (int loc2 = 0; loc2 < P; loc2++) {
-                        if (loc1 == loc2) continue;
-                        int dist = distanceMatrix[loc1][loc2];
-                        if (dist > dlb) {
-                            allowed.add(loc1, loc2, dist);
-                        }
-                    }
+                if (compactTable) {
+                    // Tuple set = shared support bits at d_lb + 1; only the bounds of FF matter
+                    IntVar ff = model.intVar("FF_" + idx, 0, maxDist, true);
+                    FF.add(ff);
+                    new DistanceTable(F_vars[f1], F_vars[f2], ff, distanceMatrix, dlb).post();
+                    sharedTupleSets.add(dlb);
+                    idx++;
+                    continue;
                 }
 
-                model.table(new IntVar[]{F_vars[f1], F_vars[f2], ff}, allowed).post();
+                IntVar ff = model.intVar("FF_" + idx, 0, maxDist);
+                FF.add(ff);
+
+                model.table(new IntVar[]{F_vars[f1], F_vars[f2], ff}, tuplesByDlb.get(dlb)).post();
+                sharedTupleSets.add(dlb);
                 idx++;
             }
         }
+        System.out.println(idx + " table constraints over " + sharedTupleSets.size() + " shared tuple sets");
 
 
         // Objective: maximize the minimum distance
-        IntVar minDist = model.intVar("minDist", 0, Arrays.stream(distances).max().getAsInt());
+        IntVar minDist = model.intVar("minDist", 0, distanceMatrix.max());
         model.min(minDist, FF.toArray(new IntVar[0])).post();
         model.setObjective(Model.MAXIMIZE, minDist);
+        seedWarmStart(model, F_vars, minDist);
+        phases.end();
+        System.out.println(phases);
 
         AbstractStrategy<IntVar> orderingStrategy;
         if(ordering.equals("lexico")){
@@ -233,8 +522,8 @@ public class Main {
                     F_vars
             );
         }else{
-            System.out.println("Using dom/wdeg");
-            orderingStrategy = domOverWDegSearch(F_vars);
+            if (ordering.equals("domwdeg")) System.out.println("Using dom/wdeg");
+            orderingStrategy = facilityStrategy(ordering, model, F_vars, data);
         }
 
 
@@ -258,39 +547,57 @@ public class Main {
             endTime = System.currentTimeMillis();
             sol.record();
             solindex++;
-            System.out.println("#" + solindex + "   obj: " + sol.getIntVal(minDist) + "   " + ((endTime - startTime) / 1000) + "s");
+            System.out.println("#" + solindex + "   obj: " + data.distanceValue(sol.getIntVal(minDist)) + "   " + ((endTime - startTime) / 1000) + "s");
         }
         System.out.print("\n");
         solver.printStatistics();
 
     }
 
-    private static void solvepDDTernaryModel(DataReader.DistanceData data, String ordering, boolean restartOnSol, boolean pruningHeuristic){
-        System.out.println("Model with Ternary Constraints");
+    /** Allowed (loc1, loc2, dist) triples of a pair with the given d_cons. */
+    private static Tuples pairTuples(DistanceMatrix distanceMatrix, int dlb) {
+        int P = distanceMatrix.size();
+        Tuples allowed = new Tuples(true);
+        for (int loc1 = 0; loc1 < P; loc1++) {
+            for (int loc2 = 0; loc2 < P; loc2++) {
+                if (loc1 == loc2) continue;
+                int dist = distanceMatrix.get(loc1, loc2);
+                if (dist > dlb) {
+                    allowed.add(loc1, loc2, dist);
+                }
+            }
+        }
+        return allowed;
+    }
+
+    private static void solvepDDTernaryModel(DataReader.DistanceData data, String ordering, boolean restartOnSol, boolean pruningHeuristic, boolean incremental, boolean global){
+        System.out.println(global ? "Model with a Global All-Pairs DistanceGT Constraint" : "Model with Ternary Constraints");
 
-        int F = data.facilities;
         int P = data.points;
-        int[] distances = data.flatDistances;
         int[] dCons = data.flatConstraints;
 
 
-        int[][] distanceMatrix = unflatten(distances, P, P);
+        DistanceMatrix distanceMatrix = data.distances;
+
+        BuildPhases phases = new BuildPhases();
+        precomputeSupports(data, phases);
+        phases.begin("posting");
 
         Model model = new Model("P-Dispersion with Distance Contraints");
 
-        IntVar[] F_vars = model.intVarArray("F", F, 0, P - 1);
-        IntVar minDist = model.intVar("minDist", 0, Arrays.stream(distances).max().getAsInt());
+        IntVar[] F_vars = facilityVars(model, data);
 
-        for (int i = 0; i < F - 1; i++) {
-            for (int j = i + 1; j < F; j++) {
-                int d_lb = dCons[i * F + j];
-                model.post(new DistanceGT(F_vars[i], F_vars[j], minDist, distanceMatrix, d_lb));
-            }
-        }
+        postSymmetryBreaking(model, F_vars, data);
+        IntVar minDist = model.intVar("minDist", 0, distanceMatrix.max());
+
+        postTernaryConstraints(model, F_vars, minDist, distanceMatrix, dCons, incremental, global);
 
         // Objective: maximize the minimum distance
 
         model.setObjective(Model.MAXIMIZE, minDist);
+        seedWarmStart(model, F_vars, minDist);
+        phases.end();
+        System.out.println(phases);
 
         Solver solver = model.getSolver();
         AbstractStrategy<IntVar> stratF;
@@ -307,17 +614,20 @@ public class Main {
             //solver.setSearch(stratF, stratMinDist);
 
         }else{
-            stratF = domOverWDegSearch(F_vars);
+            stratF = facilityStrategy(ordering, model, F_vars, data);
             stratMinDist = Search.intVarSearch(minDist);
             //solver.setSearch(domOverWDegSearch(F_vars), stratMinDist);
         }
 
+        StrategyWrapperPDDTernary cut = null;
+        if (pruningHeuristic) stratF = cut = new StrategyWrapperPDDTernary(F_vars, minDist, distanceMatrix, stratF);
         solver.setSearch(stratF, stratMinDist);
 
         if (restartOnSol) {
             System.out.println("Using restarts on solutions");
             solver.setRestartOnSolutions();
         }
+        PDDNeighborhood lns = useLNS(model, F_vars, distanceMatrix);
         solver.limitTime("3600s");
 
         Solution sol = new Solution(model);
@@ -335,35 +645,143 @@ public class Main {
             endTime = System.currentTimeMillis();
             sol.record();
             solindex++;
-            System.out.println("#" + solindex + "   obj: " + sol.getIntVal(minDist)  + "   " + ((endTime - startTime)/1000)+"s");
+            System.out.println("#" + solindex + "   obj: " + data.distanceValue(sol.getIntVal(minDist))  + "   " + ((endTime - startTime)/1000)+"s");
         }
         System.out.print("\n");
         solver.printStatistics();
+        if (lns != null) System.out.print(lns.statistics());
+        if (TRACK_PM && cut != null) System.out.print(cut.statistics());
+    }
+
+    /**
+     * Binary search over the sorted distinct distances. Each probe is a pure feasibility
+     * question "all pairs >= T", posted as DistanceGT(F1, F2, dist, max(d_lb, T-1)) without
+     * an objective variable, and solved under its own node limit. A feasible probe moves the
+     * lower end to the probe solution's actual minimum distance; an infeasible probe proves
+     * the optimum is below T. A probe that hits its limit is treated as infeasible, and the
+     * final bound is then reported as unproven.
+     */
+    private static void solvepDDDichotomic(DataReader.DistanceData data, String ordering, long probeNodes) {
+        System.out.println("Dichotomic search over distance thresholds (node limit per probe: " + probeNodes + ")");
+
+        int F = data.facilities;
+        int[] dCons = data.flatConstraints;
+
+        DistanceMatrix distanceMatrix = data.distances;
+        int[] values = distanceMatrix.distinctValues();
+
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + 3600_000L;
+
+        // index of the best distance known to be feasible (the warm start, if any)
+        int lo = WARM_START == null ? -1 : Arrays.binarySearch(values, WARM_START.value);
+        int hi = values.length;      // index of the smallest distance known (or assumed) infeasible
+        boolean proven = true;
+        int probes = 0;
+
+        System.out.println("--Started solving...");
+        while (lo + 1 < hi && System.currentTimeMillis() < deadline) {
+            int mid = (lo + hi) >>> 1;
+            int T = values[mid];
+
+            Model model = new Model("pDD probe >= " + T);
+            IntVar[] F_vars = facilityVars(model, data);
+            postSymmetryBreaking(model, F_vars, data);
+            for (int i = 0; i < F - 1; i++) {
+                for (int j = i + 1; j < F; j++) {
+                    int d_lb = Math.max(dCons[i * F + j], T - 1);
+                    model.post(new DistanceGT(F_vars[i], F_vars[j], distanceMatrix, d_lb));
+                }
+            }
+
+            Solver solver = model.getSolver();
+            solver.setSearch(facilityStrategy(ordering, model, F_vars, data));
+            solver.limitNode(probeNodes);
+            solver.limitTime(Math.max(1L, deadline - System.currentTimeMillis()));
+
+            probes++;
+            String outcome;
+            if (solver.solve()) {
+                int dmin = Integer.MAX_VALUE;
+                for (int i = 0; i < F - 1; i++) {
+                    for (int j = i + 1; j < F; j++) {
+                        dmin = Math.min(dmin, distanceMatrix.get(F_vars[i].getValue(), F_vars[j].getValue()));
+                    }
+                }
+                lo = Arrays.binarySearch(values, dmin);
+                outcome = "feasible, obj: " + data.distanceValue(dmin);
+            } else if (solver.isStopCriterionMet()) {
+                hi = mid;
+                proven = false;
+                outcome = "unknown (limit reached)";
+            } else {
+                hi = mid;
+                outcome = "infeasible";
+            }
+            System.out.println("probe #" + probes + "   T: " + data.distanceValue(T) + "   " + outcome
+                    + "   nodes: " + solver.getNodeCount()
+                    + "   " + ((System.currentTimeMillis() - startTime) / 1000) + "s");
+        }
+        System.out.print("\n");
+        if (lo < 0) {
+            System.out.println("No feasible solution found.");
+        } else {
+            proven &= lo + 1 >= hi;
+            System.out.println("Best obj: " + data.distanceValue(values[lo]) + (proven ? "   (optimal)" : "   (not proven optimal)"));
+        }
+    }
+
+    /**
+     * Search over the facilities for the 'ordering' argument:
+     *   lexico            : input order, smallest location;
+     *   farthest          : input order, farthest-point location;
+     *   tightest          : tightest remaining d_cons row, smallest location;
+     *   tightest-farthest : tightest remaining d_cons row, farthest-point location;
+     *   anything else     : dom/wdeg.
+     */
+    private static AbstractStrategy<IntVar> facilityStrategy(String ordering, Model model, IntVar[] F_vars, DataReader.DistanceData data) {
+        switch (ordering) {
+            case "lexico":
+                return Search.intVarSearch(new InputOrder<>(model), new IntDomainMin(), F_vars);
+            case "farthest":
+                return Search.intVarSearch(new InputOrder<>(model),
+                        new FarthestPointValueSelector(F_vars, data.distances), F_vars);
+            case "tightest":
+                return Search.intVarSearch(new TightestConstraintsVariableSelector(data.flatConstraints, data.facilities),
+                        new IntDomainMin(), F_vars);
+            case "tightest-farthest":
+                return Search.intVarSearch(new TightestConstraintsVariableSelector(data.flatConstraints, data.facilities),
+                        new FarthestPointValueSelector(F_vars, data.distances), F_vars);
+            default:
+                return domOverWDegSearch(F_vars);
+        }
     }
 
-    private static void solvepDDBinaryModel(DataReader.DistanceData data, String ordering){
+    private static void solvepDDBinaryModel(DataReader.DistanceData data, String ordering, boolean pruningHeuristic){
         System.out.println("Model with Simple BINARY Constraints");
 
         int F = data.facilities;
         int P = data.points;
-        int[] distances = data.flatDistances;
         int[] dCons = data.flatConstraints;
 
 
-        int[][] distanceMatrix = unflatten(distances, P, P);
+        DistanceMatrix distanceMatrix = data.distances;
 
         SharedBest minDist = new SharedBest();
 
+        BuildPhases phases = new BuildPhases();
+        precomputeSupports(data, phases);
+        phases.begin("posting");
+
         Model model = new Model("P-Dispersion with Distance Contraints");
 
-        IntVar[] F_vars = model.intVarArray("F", F, 0, P - 1);
+        IntVar[] F_vars = facilityVars(model, data);
 
-        for (int i = 0; i < F - 1; i++) {
-            for (int j = i + 1; j < F; j++) {
-                int d_lb = dCons[i * F + j];
-                model.post(new DistanceGT(F_vars[i], F_vars[j], minDist, distanceMatrix, d_lb));
-            }
-        }
+        postSymmetryBreaking(model, F_vars, data);
+
+        postBinaryConstraints(model, F_vars, minDist, distanceMatrix, dCons);
+        phases.end();
+        System.out.println(phases);
 
         AbstractStrategy<IntVar> orderingStrategy;
         if(ordering.equals("lexico")){
@@ -374,13 +792,14 @@ public class Main {
                     F_vars
             );
         }else{
-            orderingStrategy = domOverWDegSearch(F_vars);
+            orderingStrategy = facilityStrategy(ordering, model, F_vars, data);
         }
 
-        StrategyWrapperPDDSimpleBIN simpleStrategy = new StrategyWrapperPDDSimpleBIN(F_vars, minDist, distanceMatrix, orderingStrategy);
+        StrategyWrapperPDDSimpleBIN simpleStrategy = new StrategyWrapperPDDSimpleBIN(F_vars, minDist, distanceMatrix, orderingStrategy, pruningHeuristic);
 
         Solver solver = model.getSolver();
         solver.setSearch(simpleStrategy);
+        seedWarmStart(model, F_vars, minDist);
 
         solver.limitTime("3600s");
 
@@ -405,21 +824,461 @@ public class Main {
                 int ai = sol.getIntVal(F_vars[i]);
                 for (int j = i + 1; j < F; j++) {
                     int aj = sol.getIntVal(F_vars[j]);
-                    int dij = distanceMatrix[ai][aj];
+                    int dij = distanceMatrix.get(ai, aj);
                     if (dij < dmin) dmin = dij;
                 }
             }
             if(best<dmin){
                 best=dmin;
 
-                System.out.println("#" + solindex + "   obj: " + dmin  + "   " + ((endTime - startTime)/1000)+"s");
+                System.out.println("#" + solindex + "   obj: " + data.distanceValue(dmin)  + "   " + ((endTime - startTime)/1000)+"s");
             }
         }
         System.out.print("\n");
         solver.printStatistics();
+        if (TRACK_PM && pruningHeuristic) System.out.print(simpleStrategy.statistics());
+    }
+
+
+
+    private static void postTernaryConstraints(Model model, IntVar[] F_vars, IntVar minDist, DistanceMatrix distanceMatrix, int[] dCons, boolean incremental, boolean global) {
+        int F = F_vars.length;
+        if (global) {
+            model.post(new AllDistanceGT(F_vars, minDist, distanceMatrix, dCons));
+        } else {
+            for (int i = 0; i < F - 1; i++) {
+                for (int j = i + 1; j < F; j++) {
+                    int d_lb = dCons[i * F + j];
+                    model.post(new DistanceGT(F_vars[i], F_vars[j], minDist, distanceMatrix, d_lb, incremental));
+                }
+            }
+        }
+    }
+
+    private static void postBinaryConstraints(Model model, IntVar[] F_vars, SharedBest minDist, DistanceMatrix distanceMatrix, int[] dCons) {
+        int F = F_vars.length;
+        for (int i = 0; i < F - 1; i++) {
+            for (int j = i + 1; j < F; j++) {
+                int d_lb = dCons[i * F + j];
+                model.post(new DistanceGT(F_vars[i], F_vars[j], minDist, distanceMatrix, d_lb));
+            }
+        }
     }
 
+    /**
+     * Search of portfolio worker w: 0 = lexico, 1 = domOverWDeg, 2 = domOverWDeg with Luby
+     * restarts, 3.. = random search seeded with w, with Luby restarts.
+     */
+    private static AbstractStrategy<IntVar> workerStrategy(int w, Model model, IntVar[] F_vars) {
+        if (w >= 2) {
+            model.getSolver().setLubyRestart(500, new FailCounter(model, 0), 5000);
+        }
+        if (w == 0) return Search.intVarSearch(new InputOrder<>(model), new IntDomainMin(), F_vars);
+        if (w <= 2) return domOverWDegSearch(F_vars);
+        return Search.randomSearch(F_vars, w);
+    }
+
+    private static String workerName(int w) {
+        if (w == 0) return "lexico";
+        if (w == 1) return "domwdeg";
+        if (w == 2) return "domwdeg + restarts";
+        return "random (seed " + w + ") + restarts";
+    }
+
+    /**
+     * Runs 'workers' copies of the ternary (or global) model on a Choco ParallelPortfolio.
+     * The copies differ only in their search; each new incumbent tightens the objective
+     * bound of every copy.
+     */
+    private static void solvepDDTernaryPortfolio(DataReader.DistanceData data, int workers, boolean pruningHeuristic, boolean incremental, boolean global) {
+        System.out.println("Portfolio of " + workers + (global ? " global" : " ternary") + " models (shared objective bound)");
+
+        int[] dCons = data.flatConstraints;
+
+        DistanceMatrix distanceMatrix = data.distances;
+        int maxDist = distanceMatrix.max();
+
+        BuildPhases phases = new BuildPhases();
+        precomputeSupports(data, phases);
+        phases.begin("posting");
+
+        ParallelPortfolio portfolio = new ParallelPortfolio(false);
+        StrategyWrapperPDDTernary[] cuts = new StrategyWrapperPDDTernary[workers];
+        for (int w = 0; w < workers; w++) {
+            Model model = new Model("worker " + w);
+            IntVar[] F_vars = facilityVars(model, data);
+            postSymmetryBreaking(model, F_vars, data);
+            IntVar minDist = model.intVar("minDist", 0, maxDist);
+            postTernaryConstraints(model, F_vars, minDist, distanceMatrix, dCons, incremental, global);
+            model.setObjective(Model.MAXIMIZE, minDist);
+            seedWarmStart(model, F_vars, minDist);
+
+            Solver solver = model.getSolver();
+            AbstractStrategy<IntVar> stratF = workerStrategy(w, model, F_vars);
+            if (pruningHeuristic) stratF = cuts[w] = new StrategyWrapperPDDTernary(F_vars, minDist, distanceMatrix, stratF);
+            solver.setSearch(stratF, Search.intVarSearch(minDist));
+            solver.limitTime("3600s");
+            portfolio.addModel(model);
+            System.out.println("worker " + w + ": " + workerName(w));
+        }
+        phases.end();
+        System.out.println(phases);
+
+        System.out.print("\n");
+        int solindex = 0;
+        long startTime = System.currentTimeMillis();
+
+        System.out.println("--Started solving...");
+        while (portfolio.solve()) {
+            long endTime = System.currentTimeMillis();
+            Model best = portfolio.getBestModel();
+            solindex++;
+            System.out.println("#" + solindex + "   obj: " + data.distanceValue(best.getSolver().getBestSolutionValue().intValue())
+                    + "   " + ((endTime - startTime)/1000) + "s   [" + best.getName() + "]");
+        }
+        System.out.print("\n");
+        List<Model> models = portfolio.getModels();
+        for (int w = 0; w < models.size(); w++) {
+            Solver s = models.get(w).getSolver();
+            System.out.println(models.get(w).getName() + ":   nodes: " + s.getNodeCount() + "   fails: " + s.getFailCount()
+                    + "   solutions: " + s.getSolutionCount());
+            if (TRACK_PM && cuts[w] != null) System.out.print("    " + cuts[w].statistics());
+        }
+    }
+
+    /**
+     * Runs 'workers' copies of the binary model on separate threads. All copies post their
+     * DistanceGT propagators on the same SharedBest, so an incumbent found by any worker
+     * prunes every other worker from its next propagation on. The first worker to exhaust
+     * its search proves the incumbent optimal and stops the others.
+     */
+    private static void solvepDDBinaryPortfolio(DataReader.DistanceData data, int workers, boolean pruningHeuristic) {
+        System.out.println("Portfolio of " + workers + " binary models (shared SharedBest)");
+
+        int[] dCons = data.flatConstraints;
+
+        DistanceMatrix distanceMatrix = data.distances;
+
+        SharedBest minDist = new SharedBest();
+        BuildPhases phases = new BuildPhases();
+        precomputeSupports(data, phases);
+        System.out.println(phases);        // each worker posts its own model on its thread
+        AtomicBoolean proven = new AtomicBoolean(false);
+        int[] reported = {0};
+        long startTime = System.currentTimeMillis();
+
+        List<Callable<String>> tasks = new ArrayList<>();
+        for (int k = 0; k < workers; k++) {
+            final int w = k;
+            tasks.add(() -> {
+                Model model = new Model("worker " + w);
+                IntVar[] F_vars = facilityVars(model, data);
+                postSymmetryBreaking(model, F_vars, data);
+                postBinaryConstraints(model, F_vars, minDist, distanceMatrix, dCons);
+
+                Solver solver = model.getSolver();
+                StrategyWrapperPDDSimpleBIN strategy = new StrategyWrapperPDDSimpleBIN(F_vars, minDist, distanceMatrix,
+                        workerStrategy(w, model, F_vars), pruningHeuristic);
+                solver.setSearch(strategy);
+                seedWarmStart(model, F_vars, minDist);
+                solver.limitTime("3600s");
+                solver.addStopCriterion(proven::get);
+
+                while (solver.solve()) {
+                    int dmin = minPairDistance(F_vars, distanceMatrix);
+                    synchronized (reported) {
+                        if (reported[0] < dmin) {
+                            reported[0] = dmin;
+                            System.out.println("obj: " + data.distanceValue(dmin) + "   "
+                                    + ((System.currentTimeMillis() - startTime)/1000) + "s   [worker " + w + "]");
+                        }
+                    }
+                }
+                if (!solver.isStopCriterionMet()) proven.set(true);
+                return "worker " + w + " (" + workerName(w) + "):   nodes: " + solver.getNodeCount()
+                        + "   fails: " + solver.getFailCount() + "   solutions: " + solver.getSolutionCount()
+                        + (TRACK_PM && pruningHeuristic ? "\n    " + strategy.statistics().trim() : "");
+            });
+        }
+
+        System.out.println("--Started solving...");
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            List<String> summaries = new ArrayList<>();
+            for (Future<String> f : pool.invokeAll(tasks)) summaries.add(f.get());
+            System.out.print("\n");
+            summaries.forEach(System.out::println);
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("Best obj: " + data.distanceValue(reported[0]) + (proven.get() ? "   (optimal)" : "   (not proven optimal)"));
+    }
+
+    /**
+     * Embarrassingly parallel search over the binary model. A master model fixes the first
+     * 'depth' facilities (input order) to every combination that survives propagation, with
+     * depth growing until there are at least 'target' subproblems. Each subproblem is then
+     * solved as its own binary model on a work-stealing ForkJoinPool; all of them post their
+     * DistanceGT propagators on one SharedBest, so every incumbent prunes the subproblems
+     * still running or queued.
+     */
+    private static void solvepDDEPS(DataReader.DistanceData data, String ordering, int threads, int target) {
+        System.out.println("Embarrassingly parallel search on " + threads + " threads (target: " + target + " subproblems)");
+
+        int F = data.facilities;
+        int[] dCons = data.flatConstraints;
+
+        DistanceMatrix distanceMatrix = data.distances;
+        SharedBest minDist = new SharedBest();
+        if (WARM_START != null) minDist.raiseTo(WARM_START.value);
+        BuildPhases phases = new BuildPhases();
+        precomputeSupports(data, phases);
+        System.out.println(phases);
+
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + 3600_000L;
+
+        // 1) Decomposition
+        Model master = new Model("pDD decomposition");
+        IntVar[] M_vars = facilityVars(master, data);
+        postSymmetryBreaking(master, M_vars, data);
+        postBinaryConstraints(master, M_vars, minDist, distanceMatrix, dCons);
 
+        List<Subproblem> subproblems = new ArrayList<>();
+        try {
+            master.getSolver().propagate();
+            // Breadth-first refinement: split the shallowest open subproblem until the target is
+            // reached; the last split only gets the room left, so the count never exceeds it
+            ArrayDeque<Subproblem> open = new ArrayDeque<>();
+            open.add(new Subproblem(new int[0], Integer.MIN_VALUE, Integer.MAX_VALUE));
+            while (!open.isEmpty() && open.size() + subproblems.size() < target) {
+                Subproblem sp = open.poll();
+                if (sp.prefix.length == F) {
+                    subproblems.add(sp);
+                    continue;
+                }
+                int room = target - open.size() - subproblems.size();
+                for (Subproblem child : splitSubproblem(master, M_vars, sp, room)) {
+                    open.add(child);
+                }
+            }
+            subproblems.addAll(open);
+        } catch (ContradictionException e) {
+            subproblems.clear();
+        }
+        int minDepth = F, maxDepth = 0;
+        for (Subproblem sp : subproblems) {
+            minDepth = Math.min(minDepth, sp.prefix.length);
+            maxDepth = Math.max(maxDepth, sp.prefix.length);
+        }
+        System.out.println("Decomposition: " + subproblems.size() + " subproblems at depth "
+                + (minDepth >= maxDepth ? String.valueOf(maxDepth) : minDepth + "-" + maxDepth) + "   "
+                + ((System.currentTimeMillis() - startTime)/1000) + "s");
+        if (subproblems.isEmpty()) {
+            System.out.println("No feasible solution found.");
+            return;
+        }
+
+        // 2) Subproblems
+        int[] reported = {0};
+        AtomicInteger completed = new AtomicInteger();
+        IntConsumer solveSubproblem = k -> {
+            if (System.currentTimeMillis() >= deadline) return;
+            Subproblem sp = subproblems.get(k);
+            Model model = new Model("subproblem " + k);
+            IntVar[] F_vars = facilityVars(model, data);
+            for (int i = 0; i < sp.prefix.length; i++) {
+                model.post(model.arithm(F_vars[i], "=", sp.prefix[i]));
+            }
+            if (sp.isRange()) {
+                IntVar next = F_vars[sp.prefix.length];
+                model.post(model.arithm(next, ">=", sp.lo));
+                model.post(model.arithm(next, "<=", sp.hi));
+            }
+            postSymmetryBreaking(model, F_vars, data);
+            postBinaryConstraints(model, F_vars, minDist, distanceMatrix, dCons);
+
+            Solver solver = model.getSolver();
+            solver.setSearch(new StrategyWrapperPDDSimpleBIN(F_vars, minDist, distanceMatrix, facilityStrategy(ordering, model, F_vars, data)));
+            solver.addStopCriterion(() -> System.currentTimeMillis() >= deadline);
+
+            while (solver.solve()) {
+                int dmin = minPairDistance(F_vars, distanceMatrix);
+                synchronized (reported) {
+                    if (reported[0] < dmin) {
+                        reported[0] = dmin;
+                        System.out.println("obj: " + data.distanceValue(dmin) + "   "
+                                + ((System.currentTimeMillis() - startTime)/1000) + "s   [subproblem " + k + "]");
+                    }
+                }
+            }
+            if (!solver.isStopCriterionMet()) completed.incrementAndGet();
+        };
+
+        System.out.println("--Started solving...");
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new SubproblemTask(0, subproblems.size(), solveSubproblem));
+        } finally {
+            pool.shutdown();
+        }
+
+        System.out.print("\n");
+        System.out.println("Subproblems completed: " + completed.get() + "/" + subproblems.size()
+                + "   " + ((System.currentTimeMillis() - startTime)/1000) + "s");
+        if (reported[0] == 0 && completed.get() == subproblems.size()) {
+            System.out.println("No feasible solution found.");
+        } else {
+            System.out.println("Best obj: " + data.distanceValue(reported[0])
+                    + (completed.get() == subproblems.size() ? "   (optimal)" : "   (not proven optimal)"));
+        }
+    }
+
+    /**
+     * Subproblem of the decomposition: F_vars[0..prefix.length) fixed to 'prefix' and, for a
+     * range subproblem, F_vars[prefix.length] restricted to [lo, hi].
+     */
+    private static final class Subproblem {
+        final int[] prefix;
+        final int lo, hi;
+
+        Subproblem(int[] prefix, int lo, int hi) {
+            this.prefix = prefix;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        boolean isRange() {
+            return lo != Integer.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Children of 'sp': one per value of the next facility that survives propagation, replayed
+     * from the master root. With more values than 'room' (at least 2), the values are grouped
+     * into 'room' consecutive ranges instead.
+     */
+    private static List<Subproblem> splitSubproblem(Model model, IntVar[] F_vars, Subproblem sp, int room) {
+        int depth = sp.prefix.length;
+        IntVar x = F_vars[depth];
+        List<Integer> values = new ArrayList<>();
+        model.getEnvironment().worldPush();
+        try {
+            for (int i = 0; i < depth; i++) F_vars[i].instantiateTo(sp.prefix[i], Cause.Null);
+            if (sp.isRange()) x.updateBounds(sp.lo, sp.hi, Cause.Null);
+            model.getSolver().propagate();
+            for (int v = x.getLB(); v != Integer.MAX_VALUE; v = x.nextValue(v)) {
+                model.getEnvironment().worldPush();
+                try {
+                    x.instantiateTo(v, Cause.Null);
+                    model.getSolver().propagate();
+                    values.add(v);
+                } catch (ContradictionException e) {
+                    model.getSolver().getEngine().flush();
+                }
+                model.getEnvironment().worldPop();
+            }
+        } catch (ContradictionException e) {
+            model.getSolver().getEngine().flush();
+        }
+        model.getEnvironment().worldPop();
+
+        List<Subproblem> children = new ArrayList<>();
+        int groups = Math.min(values.size(), Math.max(2, room));
+        for (int g = 0; g < groups; g++) {
+            int from = (int) ((long) values.size() * g / groups);
+            int to = (int) ((long) values.size() * (g + 1) / groups) - 1;
+            if (from == to) {
+                int[] prefix = Arrays.copyOf(sp.prefix, depth + 1);
+                prefix[depth] = values.get(from);
+                children.add(new Subproblem(prefix, Integer.MIN_VALUE, Integer.MAX_VALUE));
+            } else {
+                children.add(new Subproblem(sp.prefix, values.get(from), values.get(to)));
+            }
+        }
+        return children;
+    }
+
+    /** Splits [lo, hi) in halves down to single subproblems, so idle workers steal the other halves. */
+    private static final class SubproblemTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int lo, hi;
+        private final IntConsumer solve;
+
+        SubproblemTask(int lo, int hi, IntConsumer solve) {
+            this.lo = lo;
+            this.hi = hi;
+            this.solve = solve;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo == 1) {
+                solve.accept(lo);
+            } else {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new SubproblemTask(lo, mid, solve), new SubproblemTask(mid, hi, solve));
+            }
+        }
+    }
+
+    /**
+     * Shared per-pair data, built on the common fork-join pool before anything is posted: the
+     * sorted neighbour index and the support table of every threshold d_cons + 1. The
+     * constraints, posted afterwards in pair order, only look them up.
+     */
+    private static void precomputeSupports(DataReader.DistanceData data, BuildPhases phases) {
+        DistanceMatrix distanceMatrix = data.distances;
+        int F = data.facilities;
+        phases.run("distance index", () -> DistanceIndex.of(distanceMatrix));
+        int[] thresholds = IntStream.range(0, F * F).filter(k -> k / F < k % F)
+                .map(k -> data.flatConstraints[k] + 1).distinct().toArray();
+        phases.run("support tables (" + thresholds.length + " thresholds)",
+                () -> SupportTable.prebuild(distanceMatrix, thresholds));
+    }
+
+    private static int minPairDistance(IntVar[] F_vars, DistanceMatrix distanceMatrix) {
+        int dmin = Integer.MAX_VALUE;
+        for (int i = 0; i < F_vars.length - 1; i++) {
+            int ai = F_vars[i].getValue();
+            for (int j = i + 1; j < F_vars.length; j++) {
+                dmin = Math.min(dmin, distanceMatrix.get(ai, F_vars[j].getValue()));
+            }
+        }
+        return dmin;
+    }
+
+    /**
+     * Orders interchangeable facilities (same d_cons row): F[i] < F[j] for consecutive members
+     * i < j of each class, or F[i] <= F[j] when two facilities may share a location (d_cons < 0).
+     */
+    private static void postSymmetryBreaking(Model model, IntVar[] F_vars, DataReader.DistanceData data) {
+        if (!SYMMETRY_BREAKING) return;
+        int F = data.facilities;
+        for (int[] pair : symmetryPairs(data)) {
+            String op = data.flatConstraints[pair[0] * F + pair[1]] >= 0 ? "<" : "<=";
+            model.arithm(F_vars[pair[0]], op, F_vars[pair[1]]).post();
+        }
+    }
+
+    /** Consecutive members (i, j) of each class of interchangeable facilities. */
+    private static List<int[]> symmetryPairs(DataReader.DistanceData data) {
+        int F = data.facilities;
+        int[] cls = data.facilityClass;
+        List<int[]> pairs = new ArrayList<>();
+        for (int i = 0; i < F; i++) {
+            for (int j = i + 1; j < F; j++) {
+                if (cls[j] == cls[i]) {
+                    pairs.add(new int[]{i, j});
+                    break;
+                }
+            }
+        }
+        return pairs;
+    }
 
     // Placeholder methods to simulate input loading
     private static int[][] loadDistanceMatrix(int P) {
@@ -0,0 +1,13 @@
+package org.mysearch.constraints;
+
+import org.chocosolver.solver.constraints.Constraint;
+import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceMatrix;
+
+
+
+public final class AllDistanceGT extends Constraint {
+    public AllDistanceGT(IntVar[] F, IntVar minDist, DistanceMatrix dist, int[] dCons) {
+        super("AllDistanceGT", new PropAllDistanceGT(F, minDist, dist, dCons));
+    }
+}
@@ -2,18 +2,22 @@ package org.mysearch.constraints;
 
 import org.chocosolver.solver.constraints.Constraint;
 import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceMatrix;
 import org.mysearch.util.SharedBest;
 
 
 
 public final class DistanceGT extends Constraint {
-    public DistanceGT(IntVar F1, IntVar F2, IntVar minDist, int[][] dist, int d_lb) {
+    public DistanceGT(IntVar F1, IntVar F2, IntVar minDist, DistanceMatrix dist, int d_lb) {
         super("DistanceGT", new PropDistanceGT_v2(F1, F2, minDist, dist, d_lb));
     }
-    public DistanceGT(IntVar F1, IntVar F2, SharedBest minDist, int[][] dist, int d_lb) {
+    public DistanceGT(IntVar F1, IntVar F2, IntVar minDist, DistanceMatrix dist, int d_lb, boolean incremental) {
+        super("DistanceGT", new PropDistanceGT_v2(F1, F2, minDist, dist, d_lb, incremental));
+    }
+    public DistanceGT(IntVar F1, IntVar F2, SharedBest minDist, DistanceMatrix dist, int d_lb) {
         super("DistanceGT", new PropDistanceGT_v2_BIN(F1, F2, minDist, dist, d_lb));
     }
-    public DistanceGT(IntVar F1, IntVar F2, int[][] dist, int d_lb) {
+    public DistanceGT(IntVar F1, IntVar F2, DistanceMatrix dist, int d_lb) {
         super("DistanceGT", new PropDistance(F1, F2, dist, d_lb));
     }
 }
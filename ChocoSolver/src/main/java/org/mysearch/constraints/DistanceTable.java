@@ -0,0 +1,12 @@
+package org.mysearch.constraints;
+
+import org.chocosolver.solver.constraints.Constraint;
+import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceMatrix;
+
+/** FF = dist[F1][F2], F1 != F2 and FF > d_lb, as a compact table over the shared support bits. */
+public final class DistanceTable extends Constraint {
+    public DistanceTable(IntVar F1, IntVar F2, IntVar FF, DistanceMatrix dist, int d_lb) {
+        super("DistanceTable", new PropDistanceTable(F1, F2, FF, dist, d_lb));
+    }
+}
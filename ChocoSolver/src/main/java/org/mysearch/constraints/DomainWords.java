@@ -0,0 +1,60 @@
+package org.mysearch.constraints;
+
+import org.chocosolver.solver.variables.IntVar;
+
+import java.util.Arrays;
+
+/**
+ * Word view (long[]) of an enumerated facility domain over 0..P-1.
+ *
+ * The view is loaded lazily from the variable in O(|D|) and then kept in sync by the
+ * owning propagator, which reports its own removals; it must be invalidated at the start
+ * of every propagation call, since other propagators may have changed the domain.
+ * A support check against a precomputed support row is then an AND over P/64 words.
+ */
+final class DomainWords {
+    private final long[] words;
+    private boolean loaded;
+
+    static int wordCount(int P) {
+        return (P + 63) >>> 6;
+    }
+
+    DomainWords(int P) {
+        this.words = new long[wordCount(P)];
+    }
+
+    void invalidate() {
+        loaded = false;
+    }
+
+    /** Mirrors a removal done by the owning propagator. */
+    void remove(int v) {
+        if (loaded) words[v >>> 6] &= ~(1L << v);
+    }
+
+    private void ensureLoaded(IntVar var) {
+        if (loaded) return;
+        Arrays.fill(words, 0L);
+        for (int v = var.getLB(); v != Integer.MAX_VALUE; v = var.nextValue(v)) {
+            words[v >>> 6] |= 1L << v;
+        }
+        loaded = true;
+    }
+
+    /** Smallest value of Dom(var) in row 'row' of 'table', -1 if none (early exit on first non-zero word). */
+    int firstCommon(IntVar var, SupportTable table, int row) {
+        ensureLoaded(var);
+        long[] rows = table.words();
+        int off = table.offset(row);
+        for (int i = 0; i < words.length; i++) {
+            long w = words[i] & rows[off + i];
+            if (w != 0L) return (i << 6) + Long.numberOfTrailingZeros(w);
+        }
+        return -1;
+    }
+
+    boolean intersects(IntVar var, SupportTable table, int row) {
+        return firstCommon(var, table, row) >= 0;
+    }
+}
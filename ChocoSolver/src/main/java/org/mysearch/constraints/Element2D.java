@@ -0,0 +1,12 @@
+package org.mysearch.constraints;
+
+import org.chocosolver.solver.constraints.Constraint;
+import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceMatrix;
+
+/** FF = dist[F1][F2], posted directly on the facility variables. */
+public final class Element2D extends Constraint {
+    public Element2D(IntVar F1, IntVar F2, IntVar FF, DistanceMatrix dist) {
+        super("Element2D", new PropElement2D(F1, F2, FF, dist));
+    }
+}
@@ -0,0 +1,285 @@
+package org.mysearch.constraints;
+
+import org.chocosolver.memory.IEnvironment;
+import org.chocosolver.memory.IStateInt;
+import org.chocosolver.solver.constraints.Propagator;
+import org.chocosolver.solver.constraints.PropagatorPriority;
+import org.chocosolver.solver.exception.ContradictionException;
+import org.chocosolver.solver.variables.IntVar;
+import org.chocosolver.solver.variables.events.IntEventType;
+import org.chocosolver.util.ESat;
+import org.mysearch.util.DistanceIndex;
+import org.mysearch.util.DistanceMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Enforces, for every pair i < j of facilities:
+ *     distanceMatrix.get(F[i], F[j]) >= max(minDist, d_cons[i][j] + 1)
+ * Scope = F[0..n-1], minDist (last).
+ *
+ * Each instantiated facility is applied once (trailed): its d_cons rows are filtered
+ * from the other facilities and its distances are folded into minTo[k][b], the minimum
+ * distance from location b to the first k placed facilities (one plain array per placement
+ * level). minDist is then filtered in a single pass over the union of placed facilities,
+ * and bounded from the whole partial assignment:
+ *     minDist <= min( min over placed pairs, min over free j of max_{b in D(F[j])} minTo[b] ).
+ *
+ * Free facilities are also kept arc consistent with each other, as the pairwise DistanceGT
+ * propagators do: when Dom(F[j]) shrank since the last pass (or minDist.LB rose), every free
+ * F[i] re-checks its values against F[j], first on a residue, then on the shared support
+ * table of d_cons[i][j] + 1 (word-level) or on the sorted neighbour index above it.
+ */
+public final class PropAllDistanceGT extends Propagator<IntVar> {
+    private static final int NONE = Integer.MAX_VALUE;
+
+    private final IntVar[] F;
+    private final IntVar minDist;
+    private final DistanceMatrix distanceMatrix;
+    private final int[] dCons;      // flat n*n, strict lower bounds per facility pair
+    private final int n, P;
+
+    // Placed facilities in placement order; entries below nPlaced are valid in the current world
+    private final int[] placedOrder;
+    private final int[] placedPos;
+    private final IStateInt nPlaced;
+    private final IStateInt placedMin;          // min distance among placed pairs
+    private final int[][] minTo;                // minTo[k][b] = min distance from b to the first k placed locations
+
+    // Support pass between free facilities
+    private final SupportTable[] sup;           // sup[i*n + j] row a = { b | dist(F[i]=a, F[j]=b) >= d_cons[i][j] + 1 }
+    private final DistanceIndex rows, cols;     // neighbours by descending dist[a][b] / dist[b][a]
+    private final DomainWords[] dom;
+    private final int[] residue;                // residue[(i*n + j)*P + a] = last support of F[i]=a in F[j], -1 if none
+    private final IStateInt[] seenSize;         // Dom(F[j]) size at the last support pass
+    private final IStateInt seenThr;            // minDist.LB at the last support pass
+
+    public PropAllDistanceGT(IntVar[] F, IntVar minDist, DistanceMatrix dist, int[] dCons) {
+        super(concat(F, minDist), PropagatorPriority.QUADRATIC, false);
+        this.F = F;
+        this.minDist = minDist;
+        this.distanceMatrix = dist;
+        this.dCons = dCons;
+        this.n = F.length;
+        this.P = dist.size();
+
+        this.placedOrder = new int[n];
+        this.placedPos = new int[n];
+        IEnvironment env = F[0].getModel().getEnvironment();
+        this.nPlaced = env.makeInt(0);
+        this.placedMin = env.makeInt(NONE);
+        this.minTo = new int[n + 1][P];
+        Arrays.fill(minTo[0], NONE);
+
+        this.rows = DistanceIndex.of(dist);
+        this.cols = rows.transposed();
+        this.sup = new SupportTable[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                sup[i * n + j] = SupportTable.of(dist, dCons[i * n + j] + 1);   // shared by equal d_cons
+                sup[j * n + i] = sup[i * n + j].transposed();
+            }
+        }
+        this.dom = new DomainWords[n];
+        this.seenSize = new IStateInt[n];
+        for (int i = 0; i < n; i++) {
+            dom[i] = new DomainWords(P);
+            seenSize[i] = env.makeInt(-1);
+        }
+        this.seenThr = env.makeInt(Integer.MIN_VALUE);
+        this.residue = new int[n * n * P];
+        Arrays.fill(residue, -1);
+    }
+
+    private static IntVar[] concat(IntVar[] F, IntVar minDist) {
+        IntVar[] all = new IntVar[F.length + 1];
+        System.arraycopy(F, 0, all, 0, F.length);
+        all[F.length] = minDist;
+        return all;
+    }
+
+    @Override
+    public int getPropagationConditions(int vIdx) {
+        if (vIdx < n) {
+            return IntEventType.REMOVE.getMask()
+                    | IntEventType.BOUND.getMask()
+                    | IntEventType.INSTANTIATE.getMask();
+        } else {
+            return IntEventType.INCLOW.getMask()
+                    | IntEventType.INSTANTIATE.getMask();
+        }
+    }
+
+    private boolean isPlaced(int i) {
+        int p = placedPos[i];
+        return p < nPlaced.get() && placedOrder[p] == i;
+    }
+
+    @Override
+    public void propagate(int evtmask) throws ContradictionException {
+        for (DomainWords d : dom) d.invalidate();   // other propagators may have changed the domains
+        boolean changed;
+        do {
+            changed = false;
+            // 1) Apply every newly instantiated facility once
+            for (int i = 0; i < n; i++) {
+                if (F[i].isInstantiated() && !isPlaced(i)) {
+                    place(i);
+                    changed = true;
+                }
+            }
+
+            // 2) Union filtering at the current objective threshold
+            final int thrGE = minDist.getLB();
+            if (placedMin.get() < thrGE) fails();
+            int[] minPlaced = minTo[nPlaced.get()];
+            if (nPlaced.get() > 0) {
+                for (int j = 0; j < n; j++) {
+                    if (F[j].isInstantiated()) continue;
+                    for (int b = F[j].getLB(); b != Integer.MAX_VALUE; b = F[j].nextValue(b)) {
+                        if (minPlaced[b] < thrGE) remove(j, b);
+                    }
+                    if (F[j].isInstantiated()) changed = true;
+                }
+            }
+
+            // 3) Supports between free facilities
+            changed |= reviseFreePairs(thrGE);
+        } while (changed);
+
+        // 4) Bound minDist from the whole partial assignment
+        int ub = placedMin.get();
+        if (nPlaced.get() > 0) {
+            int[] minPlaced = minTo[nPlaced.get()];
+            for (int j = 0; j < n; j++) {
+                if (F[j].isInstantiated()) continue;
+                int best = Integer.MIN_VALUE;
+                for (int b = F[j].getLB(); b != Integer.MAX_VALUE; b = F[j].nextValue(b)) {
+                    int d = minPlaced[b];
+                    if (d > best) best = d;
+                }
+                if (best < ub) ub = best;
+            }
+        }
+        if (ub != NONE) minDist.updateUpperBound(ub, this);
+    }
+
+    /** Filters the d_cons rows of facility i (now instantiated) and records its location. */
+    private void place(int i) throws ContradictionException {
+        final int l = F[i].getValue();
+
+        for (int j = 0; j < n; j++) {
+            if (j == i) continue;
+            final int dlb = dCons[i * n + j];
+            if (F[j].isInstantiated()) {
+                if (distanceMatrix.get(l, F[j].getValue()) <= dlb) fails();
+            } else {
+                for (int b = F[j].getLB(); b != Integer.MAX_VALUE; b = F[j].nextValue(b)) {
+                    if (distanceMatrix.get(l, b) <= dlb) remove(j, b);
+                }
+            }
+        }
+
+        // minTo[p][l] is the distance to the closest already placed facility; level p + 1 is
+        // built from level p (any older content belongs to a branch left by backtracking)
+        int p = nPlaced.get();
+        int[] before = minTo[p], after = minTo[p + 1];
+        int closest = before[l];
+        if (closest < placedMin.get()) placedMin.set(closest);
+        for (int b = 0; b < P; b++) {
+            after[b] = Math.min(before[b], distanceMatrix.get(l, b));
+        }
+
+        placedOrder[p] = i;
+        placedPos[i] = p;
+        nPlaced.set(p + 1);
+    }
+
+    /**
+     * Re-checks every free F[i] against each free F[j] whose domain shrank since the last pass,
+     * or against all of them once minDist.LB changed. True if a value was removed.
+     */
+    private boolean reviseFreePairs(int thrGE) throws ContradictionException {
+        boolean all = seenThr.get() != thrGE;
+        if (all) seenThr.set(thrGE);
+        boolean removed = false;
+        for (int j = 0; j < n; j++) {
+            int size = F[j].getDomainSize();
+            if (!all && size == seenSize[j].get()) continue;
+            seenSize[j].set(size);   // removals below make the revised side dirty for the next pass
+            if (F[j].isInstantiated()) continue;   // handled by place() and the union filter
+            for (int i = 0; i < n; i++) {
+                if (i != j && !F[i].isInstantiated()) removed |= revise(i, j, thrGE);
+            }
+        }
+        return removed;
+    }
+
+    /** Removes the values of F[i] without a support in F[j] at max(d_cons[i][j] + 1, thrGE). */
+    private boolean revise(int i, int j, int thrGE) throws ContradictionException {
+        final int pair = i * n + j;
+        final int base = dCons[pair] + 1;
+        final int thr = Math.max(base, thrGE);
+        final int off = pair * P;
+        boolean removed = false;
+        for (int a = F[i].getLB(); a != Integer.MAX_VALUE; a = F[i].nextValue(a)) {
+            int r = residue[off + a];
+            if (r >= 0 && F[j].contains(r) && pairDistance(i, a, j, r) >= thr) continue;
+            int s = findSupport(i, a, j, thr, base);
+            if (s < 0) {
+                remove(i, a);
+                removed = true;
+            } else {
+                residue[off + a] = s;
+            }
+        }
+        return removed;
+    }
+
+    /** A value of Dom(F[j]) at distance >= thr from F[i] = a, or -1. */
+    private int findSupport(int i, int a, int j, int thr, int base) {
+        IntVar other = F[j];
+        if (thr == base && other.hasEnumeratedDomain()) {
+            return dom[j].firstCommon(other, sup[i * n + j], a);
+        }
+        // Surviving support is a prefix of a's sorted neighbours (pair orientation as in the models)
+        DistanceIndex idx = i < j ? rows : cols;
+        int len = idx.prefixLength(a, thr);
+        if (len <= other.getDomainSize()) {
+            for (int k = 0; k < len; k++) {
+                int b = idx.neighbour(a, k);
+                if (other.contains(b)) return b;
+            }
+            return -1;
+        }
+        for (int b = other.getLB(); b <= other.getUB(); b = other.nextValue(b)) {
+            if (pairDistance(i, a, j, b) >= thr) return b;
+        }
+        return -1;
+    }
+
+    /** dist[F[min(i, j)]][F[max(i, j)]], as in isEntailed. */
+    private int pairDistance(int i, int a, int j, int b) {
+        return i < j ? distanceMatrix.get(a, b) : distanceMatrix.get(b, a);
+    }
+
+    private void remove(int j, int b) throws ContradictionException {
+        F[j].removeValue(b, this);
+        dom[j].remove(b);
+    }
+
+    @Override
+    public ESat isEntailed() {
+        for (IntVar f : F) {
+            if (!f.isInstantiated()) return ESat.UNDEFINED;
+        }
+        final int lb = minDist.getLB();
+        for (int i = 0; i < n - 1; i++) {
+            for (int j = i + 1; j < n; j++) {
+                int d = distanceMatrix.get(F[i].getValue(), F[j].getValue());
+                if (d <= dCons[i * n + j] || d < lb) return ESat.FALSE;
+            }
+        }
+        return ESat.TRUE;
+    }
+}
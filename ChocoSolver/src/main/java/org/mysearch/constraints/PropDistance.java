@@ -1,53 +1,61 @@
 package org.mysearch.constraints;
 
+import org.chocosolver.memory.IEnvironment;
+import org.chocosolver.memory.IStateInt;
 import org.chocosolver.solver.constraints.Propagator;
 import org.chocosolver.solver.constraints.PropagatorPriority;
 import org.chocosolver.solver.exception.ContradictionException;
 import org.chocosolver.solver.variables.IntVar;
 import org.chocosolver.solver.variables.events.IntEventType;
 import org.chocosolver.util.ESat;
-
-import java.util.BitSet;
+import org.mysearch.util.DistanceIndex;
+import org.mysearch.util.DistanceMatrix;
 
 /**
- * Enforces: distanceMatrix[F1][F2] >= d_lb + 1
+ * Enforces: distanceMatrix.get(F1, F2) >= d_lb + 1
  * Values of F1, F2 are indices in 0..P-1.
  *
  * Note: Baseline precomputed supports are for GE-threshold baseGE = d_lb + 1.
  */
 public final class PropDistance extends Propagator<IntVar> {
     private final IntVar F1, F2;
-    private final int[][] distanceMatrix;
+    private final DistanceMatrix distanceMatrix;
     private final int d_lb;         // static per-pair strict lower bound; threshold is d_lb+1 here
     private final int P;
 
     // Precomputed supports for the static base threshold (>= d_lb + 1):
-    private final BitSet[] supF1;   // supF1[a] = { b | dist[a][b] >= d_lb+1 }
-    private final BitSet[] supF2;   // supF2[b] = { a | dist[a][b] >= d_lb+1 }
+    private final SupportTable supF1;   // row a = { b | dist[a][b] >= d_lb+1 }
+    private final SupportTable supF2;   // row b = { a | dist[a][b] >= d_lb+1 }
+    private final DomainWords dom1, dom2;   // word views of Dom(F1), Dom(F2)
+
+    // Shared threshold-sorted neighbour lists (bounded domains and the entailment check):
+    private final DistanceIndex idxF1;  // row a: b's by descending dist[a][b]
+    private final DistanceIndex idxF2;  // row b: a's by descending dist[a][b]
 
-    public PropDistance(IntVar F1, IntVar F2, int[][] dist, int d_lb) {
+    // Tail positions for the entailment check: only touched while F1 (resp. F2) is
+    // instantiated, so the trailed value always refers to the current instantiation.
+    private final IStateInt tailF1, tailF2;
+
+    public PropDistance(IntVar F1, IntVar F2, DistanceMatrix dist, int d_lb) {
         // Scope = F1, F2, minDist
         super(new IntVar[]{F1, F2}, PropagatorPriority.BINARY, false);
         this.F1 = F1;
         this.F2 = F2;
         this.distanceMatrix = dist;
         this.d_lb = d_lb;
-        this.P = dist.length;
-
-        // Precompute supports at baseGE = d_lb + 1  (since integers: > d_lb <=> >= d_lb+1)
+        this.P = dist.size();
+        this.idxF1 = DistanceIndex.of(dist);
+        this.idxF2 = idxF1.transposed();
+        IEnvironment env = F1.getModel().getEnvironment();
+        this.tailF1 = env.makeInt(P - 1);
+        this.tailF2 = env.makeInt(P - 1);
+
+        // Supports at baseGE = d_lb + 1  (since integers: > d_lb <=> >= d_lb+1)
         int baseGE = d_lb + 1;
-        this.supF1 = new BitSet[P];
-        this.supF2 = new BitSet[P];
-        for (int a = 0; a < P; a++) supF1[a] = new BitSet(P);
-        for (int b = 0; b < P; b++) supF2[b] = new BitSet(P);
-        for (int a = 0; a < P; a++) {
-            for (int b = 0; b < P; b++) {
-                if (dist[a][b] >= baseGE) {
-                    supF1[a].set(b);
-                    supF2[b].set(a);
-                }
-            }
-        }
+        this.supF1 = SupportTable.of(dist, baseGE);   // shared by every pair with this d_lb
+        this.supF2 = supF1.transposed();              // same table when dist is symmetric
+        this.dom1 = new DomainWords(P);
+        this.dom2 = new DomainWords(P);
     }
 
     @Override
@@ -65,6 +73,8 @@ public final class PropDistance extends Propagator<IntVar> {
 
     @Override
     public void propagate(int evtmask) throws ContradictionException {
+        dom1.invalidate();   // other propagators may have changed the domains
+        dom2.invalidate();
         boolean changed;
         do {
             changed = false;
@@ -74,9 +84,32 @@ public final class PropDistance extends Propagator<IntVar> {
 
             changed |= reviseF1wrtF2(thrGE);
             changed |= reviseF2wrtF1(thrGE);
-
-            // Do NOT passivate here; minDist.LB rises during optimization.
         } while (changed);
+
+        // The threshold is static here: once entailed, the pair stays entailed for the subtree
+        if (isEntailedAt(d_lb + 1)) setPassive();
+    }
+
+    /**
+     * True when every remaining cross pair satisfies dist >= thrGE. Checked cheaply only once
+     * one side is instantiated: the nearest remaining partner of that value is found from the
+     * tail of its sorted neighbour list, through a trailed position that only moves backwards.
+     */
+    private boolean isEntailedAt(int thrGE) {
+        if (F1.isInstantiated()) {
+            return nearestPartnerDist(idxF1, F1.getValue(), F2, tailF1) >= thrGE;
+        }
+        if (F2.isInstantiated()) {
+            return nearestPartnerDist(idxF2, F2.getValue(), F1, tailF2) >= thrGE;
+        }
+        return false;
+    }
+
+    private int nearestPartnerDist(DistanceIndex idx, int v, IntVar other, IStateInt tail) {
+        int k0 = tail.get(), k = k0;
+        while (k >= 0 && !other.contains(idx.neighbour(v, k))) k--;
+        if (k != k0) tail.set(k);
+        return k < 0 ? Integer.MAX_VALUE : idx.distance(v, k);
     }
 
     private boolean reviseF1wrtF2(int thrGE) throws ContradictionException {
@@ -85,6 +118,7 @@ public final class PropDistance extends Propagator<IntVar> {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
                 if (!hasSupportAinF2(a, thrGE)) {
                     F1.removeValue(a, this);
+                    dom1.remove(a);
                     removed = true;
                 }
             }
@@ -92,6 +126,7 @@ public final class PropDistance extends Propagator<IntVar> {
             for (int a = F1.getLB(); a <= F1.getUB(); a++) {
                 if (F1.contains(a) && !hasSupportAinF2(a, thrGE)) {
                     F1.removeValue(a, this);
+                    dom1.remove(a);
                     removed = true;
                 }
             }
@@ -105,6 +140,7 @@ public final class PropDistance extends Propagator<IntVar> {
             for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
                 if (!hasSupportBinF1(b, thrGE)) {
                     F2.removeValue(b, this);
+                    dom2.remove(b);
                     removed = true;
                 }
             }
@@ -112,6 +148,7 @@ public final class PropDistance extends Propagator<IntVar> {
             for (int b = F2.getLB(); b <= F2.getUB(); b++) {
                 if (F2.contains(b) && !hasSupportBinF1(b, thrGE)) {
                     F2.removeValue(b, this);
+                    dom2.remove(b);
                     removed = true;
                 }
             }
@@ -119,75 +156,43 @@ public final class PropDistance extends Propagator<IntVar> {
         return removed;
     }
 
-    /** Support check for value 'a' in F1 against current Dom(F2) and threshold 'thrGE' (>=). */
+    /**
+     * Support check for value 'a' in F1 against current Dom(F2), at the static threshold
+     * 'thrGE' (>=). Enumerated domains take the word-level AND of row a of supF1 with Dom(F2);
+     * bounded domains scan the threshold prefix of a's sorted neighbours or the interval,
+     * whichever is shorter.
+     */
     private boolean hasSupportAinF2(int a, int thrGE) {
-        int baseGE = d_lb + 1;
-        if (thrGE == baseGE && F2.hasEnumeratedDomain()) {
-            // Fast path: supF1 intersects Dom(F2)
-            for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                if (supF1[a].get(b)) return true;
+        if (F2.hasEnumeratedDomain()) return dom2.intersects(F2, supF1, a);
+        int len = idxF1.prefixLength(a, thrGE);
+        if (len <= F2.getDomainSize()) {
+            for (int k = 0; k < len; k++) {
+                if (F2.contains(idxF1.neighbour(a, k))) return true;
             }
             return false;
         }
-        // Generic scan
-        if (F2.hasEnumeratedDomain()) {
-            for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                if (distanceMatrix[a][b] >= thrGE) return true;
-            }
-            return false;
-        } else {
-            int lb = F2.getLB(), ub = F2.getUB();
-            for (int b = lb; b <= ub; b++) {
-                if (F2.contains(b) && distanceMatrix[a][b] >= thrGE) return true;
-            }
-            return false;
+        int lb = F2.getLB(), ub = F2.getUB();
+        for (int b = lb; b <= ub; b++) {
+            if (F2.contains(b) && distanceMatrix.get(a, b) >= thrGE) return true;
         }
+        return false;
     }
 
-    /** Support check for value 'b' in F2 against current Dom(F1) and threshold 'thrGE' (>=). */
+    /** Support check for value 'b' in F2 against current Dom(F1), as hasSupportAinF2. */
     private boolean hasSupportBinF1(int b, int thrGE) {
-        int baseGE = d_lb + 1;
-        if (thrGE == baseGE && F1.hasEnumeratedDomain()) {
-            for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                if (supF2[b].get(a)) return true;
-            }
-            return false;
-        }
-        if (F1.hasEnumeratedDomain()) {
-            for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                if (distanceMatrix[a][b] >= thrGE) return true;
-            }
-            return false;
-        } else {
-            int lb = F1.getLB(), ub = F1.getUB();
-            for (int a = lb; a <= ub; a++) {
-                if (F1.contains(a) && distanceMatrix[a][b] >= thrGE) return true;
+        if (F1.hasEnumeratedDomain()) return dom1.intersects(F1, supF2, b);
+        int len = idxF2.prefixLength(b, thrGE);
+        if (len <= F1.getDomainSize()) {
+            for (int k = 0; k < len; k++) {
+                if (F1.contains(idxF2.neighbour(b, k))) return true;
             }
             return false;
         }
-    }
-
-
-    private int maxDistanceOverDomains() {
-        int best = Integer.MIN_VALUE;
-        if (F1.hasEnumeratedDomain() && F2.hasEnumeratedDomain()) {
-            for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                    int d = distanceMatrix[a][b];
-                    if (d > best) best = d;
-                }
-            }
-        } else {
-            int lb1 = F1.getLB(), ub1 = F1.getUB();
-            int lb2 = F2.getLB(), ub2 = F2.getUB();
-            for (int a = lb1; a <= ub1; a++) if (F1.contains(a)) {
-                for (int b = lb2; b <= ub2; b++) if (F2.contains(b)) {
-                    int d = distanceMatrix[a][b];
-                    if (d > best) best = d;
-                }
-            }
+        int lb = F1.getLB(), ub = F1.getUB();
+        for (int a = lb; a <= ub; a++) {
+            if (F1.contains(a) && distanceMatrix.get(a, b) >= thrGE) return true;
         }
-        return best;
+        return false;
     }
 
     @Override
@@ -199,7 +204,7 @@ public final class PropDistance extends Propagator<IntVar> {
         if (F1.hasEnumeratedDomain() && F2.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE && !exists; a = F1.nextValue(a)) {
                 for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                    if (distanceMatrix[a][b] >= thrGE) { exists = true; break; }
+                    if (distanceMatrix.get(a, b) >= thrGE) { exists = true; break; }
                 }
             }
         } else {
@@ -207,7 +212,7 @@ public final class PropDistance extends Propagator<IntVar> {
             int lb2 = F2.getLB(), ub2 = F2.getUB();
             outer: for (int a = lb1; a <= ub1; a++) if (F1.contains(a)) {
                 for (int b = lb2; b <= ub2; b++) if (F2.contains(b)) {
-                    if (distanceMatrix[a][b] >= thrGE) { exists = true; break outer; }
+                    if (distanceMatrix.get(a, b) >= thrGE) { exists = true; break outer; }
                 }
             }
         }
@@ -222,7 +227,7 @@ public final class PropDistance extends Propagator<IntVar> {
         if (F1.hasEnumeratedDomain() && F2.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
                 for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                    if (distanceMatrix[a][b] < thrGE) return false;
+                    if (distanceMatrix.get(a, b) < thrGE) return false;
                 }
             }
             return true;
@@ -231,7 +236,7 @@ public final class PropDistance extends Propagator<IntVar> {
             int lb2 = F2.getLB(), ub2 = F2.getUB();
             for (int a = lb1; a <= ub1; a++) if (F1.contains(a)) {
                 for (int b = lb2; b <= ub2; b++) if (F2.contains(b)) {
-                    if (distanceMatrix[a][b] < thrGE) return false;
+                    if (distanceMatrix.get(a, b) < thrGE) return false;
                 }
             }
             return true;
@@ -1,54 +1,113 @@
 package org.mysearch.constraints;
 
+import org.chocosolver.memory.IEnvironment;
+import org.chocosolver.memory.IStateInt;
+import org.chocosolver.memory.IStateIntVector;
 import org.chocosolver.solver.constraints.Propagator;
+import org.chocosolver.solver.constraints.PropagatorEventType;
 import org.chocosolver.solver.constraints.PropagatorPriority;
 import org.chocosolver.solver.exception.ContradictionException;
 import org.chocosolver.solver.variables.IntVar;
+import org.chocosolver.solver.variables.delta.IIntDeltaMonitor;
 import org.chocosolver.solver.variables.events.IntEventType;
 import org.chocosolver.util.ESat;
-
-import java.util.BitSet;
+import org.chocosolver.util.procedure.IntProcedure;
+import org.mysearch.util.DistanceIndex;
+import org.mysearch.util.DistanceMatrix;
 
 /**
- * Enforces: distanceMatrix[F1][F2] >= max(minDist, d_lb + 1)
+ * Enforces: distanceMatrix.get(F1, F2) >= max(minDist, d_lb + 1)
  * Values of F1, F2 are indices in 0..P-1.
  *
  * Note: Baseline precomputed supports are for GE-threshold baseGE = d_lb + 1.
+ *
+ * In incremental mode the propagator reacts to fine events: a removal from one side
+ * only re-checks the values of the other side whose residual support was removed,
+ * instead of re-revising both full domains.
  */
 public final class PropDistanceGT_v2 extends Propagator<IntVar> {
     private final IntVar F1, F2, minDist;
-    private final int[][] distanceMatrix;
+    private final DistanceMatrix distanceMatrix;
     private final int d_lb;         // static per-pair strict lower bound; threshold is d_lb+1 here
     private final int P;
 
     // Precomputed supports for the static base threshold (>= d_lb + 1):
-    private final BitSet[] supF1;   // supF1[a] = { b | dist[a][b] >= d_lb+1 }
-    private final BitSet[] supF2;   // supF2[b] = { a | dist[a][b] >= d_lb+1 }
+    private final SupportTable supF1;   // row a = { b | dist[a][b] >= d_lb+1 }
+    private final SupportTable supF2;   // row b = { a | dist[a][b] >= d_lb+1 }
+    private final DomainWords dom1, dom2;   // word views of Dom(F1), Dom(F2)
+
+    // Shared threshold-sorted neighbour lists, valid for any threshold:
+    private final DistanceIndex idxF1;  // row a: b's by descending dist[a][b]
+    private final DistanceIndex idxF2;  // row b: a's by descending dist[a][b]
+
+    // Residual supports (AC3rm): last support found per value, -1 if none yet.
+    // Trailed, so that at every fixpoint (also after backtracking) each live value's
+    // residue is a valid support; incremental mode relies on that invariant.
+    private final IStateIntVector resF1;   // resF1[a] = some b that supported a
+    private final IStateIntVector resF2;   // resF2[b] = some a that supported b
+
+    // Upper bound of dist over Dom(F1) x Dom(F2), maintained incrementally (trailed):
+    // bestPos[a] = position in a's sorted neighbours of its farthest partner still in Dom(F2)
+    // (entries before it are gone for the whole subtree); the witness pair (ubA, ubB)
+    // certifies the cached bound in O(1) as long as both values survive.
+    private final IStateIntVector bestPos;
+    private final IStateInt ubA, ubB, ubVal;
+
+    // Tail positions for the entailment check: only touched while F1 (resp. F2) is
+    // instantiated, so the trailed value always refers to the current instantiation.
+    private final IStateInt tailF1, tailF2;
 
-    public PropDistanceGT_v2(IntVar F1, IntVar F2, IntVar minDist, int[][] dist, int d_lb) {
+    // Incremental mode only (null otherwise):
+    private final boolean incremental;
+    private final IIntDeltaMonitor dm1, dm2;
+    private int[] removed, pruned;         // values removed from one side / pruned on the other
+    private int nRemoved, nPruned;
+    private boolean[] inRemoved;
+    private final IntProcedure onRemoved = v -> removed[nRemoved++] = v;
+
+    public PropDistanceGT_v2(IntVar F1, IntVar F2, IntVar minDist, DistanceMatrix dist, int d_lb) {
+        this(F1, F2, minDist, dist, d_lb, false);
+    }
+
+    public PropDistanceGT_v2(IntVar F1, IntVar F2, IntVar minDist, DistanceMatrix dist, int d_lb, boolean incremental) {
         // Scope = F1, F2, minDist
-        super(new IntVar[]{F1, F2, minDist}, PropagatorPriority.TERNARY, false);
+        super(new IntVar[]{F1, F2, minDist}, PropagatorPriority.TERNARY, incremental);
         this.F1 = F1;
         this.F2 = F2;
         this.minDist = minDist;
         this.distanceMatrix = dist;
         this.d_lb = d_lb;
-        this.P = dist.length;
+        this.P = dist.size();
+        this.idxF1 = DistanceIndex.of(dist);
+        this.idxF2 = idxF1.transposed();
+        IEnvironment env = F1.getModel().getEnvironment();
+        this.resF1 = env.makeIntVector(P, -1);
+        this.resF2 = env.makeIntVector(P, -1);
+        this.bestPos = env.makeIntVector(P, 0);
+        this.ubA = env.makeInt(-1);
+        this.ubB = env.makeInt(-1);
+        this.ubVal = env.makeInt(Integer.MIN_VALUE);
+        this.tailF1 = env.makeInt(P - 1);
+        this.tailF2 = env.makeInt(P - 1);
 
-        // Precompute supports at baseGE = d_lb + 1  (since integers: > d_lb <=> >= d_lb+1)
-        int baseGE = d_lb + 1;
-        this.supF1 = new BitSet[P];
-        this.supF2 = new BitSet[P];
-        for (int a = 0; a < P; a++) supF1[a] = new BitSet(P);
-        for (int b = 0; b < P; b++) supF2[b] = new BitSet(P);
-        for (int a = 0; a < P; a++) {
-            for (int b = 0; b < P; b++) {
-                if (dist[a][b] >= baseGE) {
-                    supF1[a].set(b);
-                    supF2[b].set(a);
-                }
-            }
+        this.incremental = incremental;
+        if (incremental) {
+            this.dm1 = F1.monitorDelta(this);
+            this.dm2 = F2.monitorDelta(this);
+            this.removed = new int[P];
+            this.pruned = new int[P];
+            this.inRemoved = new boolean[P];
+        } else {
+            this.dm1 = null;
+            this.dm2 = null;
         }
+
+        // Supports at baseGE = d_lb + 1  (since integers: > d_lb <=> >= d_lb+1)
+        int baseGE = d_lb + 1;
+        this.supF1 = SupportTable.of(dist, baseGE);   // shared by every pair with this d_lb
+        this.supF2 = supF1.transposed();              // same table when dist is symmetric
+        this.dom1 = new DomainWords(P);
+        this.dom2 = new DomainWords(P);
     }
 
     @Override
@@ -66,6 +125,16 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
 
     @Override
     public void propagate(int evtmask) throws ContradictionException {
+        if (incremental && PropagatorEventType.isFullPropagation(evtmask)) {
+            dm1.startMonitoring();
+            dm2.startMonitoring();
+        }
+        fullRevise();
+    }
+
+    private void fullRevise() throws ContradictionException {
+        dom1.invalidate();   // other propagators may have changed the domains
+        dom2.invalidate();
         boolean changed;
         do {
             changed = false;
@@ -78,17 +147,161 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
 
             // Tighten minDist.UB using this pair
             if (F1.isInstantiated() && F2.isInstantiated()) {
-                int d = distanceMatrix[F1.getValue()][F2.getValue()];
+                int d = distanceMatrix.get(F1.getValue(), F2.getValue());
 
                 minDist.updateUpperBound(d, this);
             } else {
 
-                int ubPair = maxDistanceOverDomains();
+                int ubPair = pairUpperBound();
                 minDist.updateUpperBound(ubPair, this);
             }
 
 
         } while (changed);
+
+        passivateIfEntailed();
+    }
+
+    @Override
+    public void propagate(int idxVarInProp, int mask) throws ContradictionException {
+        dom1.invalidate();   // other propagators may have changed the domains
+        dom2.invalidate();
+        if (idxVarInProp == 2) {
+            // Threshold may have risen: every residue is re-validated in O(1) anyway
+            fullRevise();
+            return;
+        }
+        final int thrGE = Math.max(minDist.getLB(), d_lb + 1);
+
+        nRemoved = 0;
+        (idxVarInProp == 0 ? dm1 : dm2).forEachRemVal(onRemoved);
+
+        // Ping-pong between the two sides until no more values are pruned
+        boolean fromF1 = idxVarInProp == 0;
+        while (nRemoved > 0) {
+            nPruned = 0;
+            if (fromF1) recheckF2(thrGE);
+            else recheckF1(thrGE);
+
+            int[] tmp = removed;
+            removed = pruned;
+            pruned = tmp;
+            nRemoved = nPruned;
+            fromF1 = !fromF1;
+        }
+
+        if (F1.isInstantiated() && F2.isInstantiated()) {
+            minDist.updateUpperBound(distanceMatrix.get(F1.getValue(), F2.getValue()), this);
+        } else {
+            minDist.updateUpperBound(pairUpperBound(), this);
+        }
+
+        passivateIfEntailed();
+    }
+
+    /**
+     * minDist.LB may still rise in this subtree, but never above minDist.UB: once every
+     * cross pair reaches max(d_lb+1, minDist.UB), no value can lose its support and the
+     * pair can no longer tighten minDist.UB, so the propagator sleeps for the subtree.
+     */
+    private void passivateIfEntailed() {
+        if (isEntailedAt(Math.max(d_lb + 1, minDist.getUB()))) setPassive();
+    }
+
+    /**
+     * True when every remaining cross pair satisfies dist >= thrGE. Checked cheaply only once
+     * one side is instantiated: the nearest remaining partner of that value is found from the
+     * tail of its sorted neighbour list, through a trailed position that only moves backwards.
+     */
+    private boolean isEntailedAt(int thrGE) {
+        if (F1.isInstantiated()) {
+            return nearestPartnerDist(idxF1, F1.getValue(), F2, tailF1) >= thrGE;
+        }
+        if (F2.isInstantiated()) {
+            return nearestPartnerDist(idxF2, F2.getValue(), F1, tailF2) >= thrGE;
+        }
+        return false;
+    }
+
+    private int nearestPartnerDist(DistanceIndex idx, int v, IntVar other, IStateInt tail) {
+        int k0 = tail.get(), k = k0;
+        while (k >= 0 && !other.contains(idx.neighbour(v, k))) k--;
+        if (k != k0) tail.set(k);
+        return k < 0 ? Integer.MAX_VALUE : idx.distance(v, k);
+    }
+
+    /**
+     * Re-checks the values b of F2 whose residue is among the values just removed from F1.
+     * Such a b is at distance >= thrGE from its residue, so it is found in the residue's
+     * sorted prefix; fall back to a residue scan over Dom(F2) when that is cheaper.
+     */
+    private void recheckF2(int thrGE) throws ContradictionException {
+        long work = 0;
+        for (int i = 0; i < nRemoved; i++) work += idxF1.prefixLength(removed[i], thrGE);
+
+        if (work <= F2.getDomainSize()) {
+            for (int i = 0; i < nRemoved; i++) {
+                int a = removed[i];
+                int len = idxF1.prefixLength(a, thrGE);
+                for (int k = 0; k < len; k++) {
+                    int b = idxF1.neighbour(a, k);
+                    if (F2.contains(b) && resF2.get(b) == a && !hasSupportBinF1(b, thrGE)) {
+                        F2.removeValue(b, this);
+                        dom2.remove(b);
+                        pruned[nPruned++] = b;
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < nRemoved; i++) inRemoved[removed[i]] = true;
+            try {
+                for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
+                    int r = resF2.get(b);
+                    if ((r < 0 || inRemoved[r]) && !hasSupportBinF1(b, thrGE)) {
+                        F2.removeValue(b, this);
+                        dom2.remove(b);
+                        pruned[nPruned++] = b;
+                    }
+                }
+            } finally {
+                for (int i = 0; i < nRemoved; i++) inRemoved[removed[i]] = false;
+            }
+        }
+    }
+
+    /** Symmetric to {@link #recheckF2(int)}: values a of F1 whose residue was removed from F2. */
+    private void recheckF1(int thrGE) throws ContradictionException {
+        long work = 0;
+        for (int i = 0; i < nRemoved; i++) work += idxF2.prefixLength(removed[i], thrGE);
+
+        if (work <= F1.getDomainSize()) {
+            for (int i = 0; i < nRemoved; i++) {
+                int b = removed[i];
+                int len = idxF2.prefixLength(b, thrGE);
+                for (int k = 0; k < len; k++) {
+                    int a = idxF2.neighbour(b, k);
+                    if (F1.contains(a) && resF1.get(a) == b && !hasSupportAinF2(a, thrGE)) {
+                        F1.removeValue(a, this);
+                        dom1.remove(a);
+                        pruned[nPruned++] = a;
+                    }
+                }
+            }
+        } else {
+            for (int i = 0; i < nRemoved; i++) inRemoved[removed[i]] = true;
+            try {
+                for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
+                    int r = resF1.get(a);
+                    if ((r < 0 || inRemoved[r]) && !hasSupportAinF2(a, thrGE)) {
+                        F1.removeValue(a, this);
+                        dom1.remove(a);
+                        pruned[nPruned++] = a;
+                    }
+                }
+            } finally {
+                for (int i = 0; i < nRemoved; i++) inRemoved[removed[i]] = false;
+            }
+        }
     }
 
     private boolean reviseF1wrtF2(int thrGE) throws ContradictionException {
@@ -97,6 +310,7 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
                 if (!hasSupportAinF2(a, thrGE)) {
                     F1.removeValue(a, this);
+                    dom1.remove(a);
                     removed = true;
                 }
             }
@@ -104,6 +318,7 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
             for (int a = F1.getLB(); a <= F1.getUB(); a++) {
                 if (F1.contains(a) && !hasSupportAinF2(a, thrGE)) {
                     F1.removeValue(a, this);
+                    dom1.remove(a);
                     removed = true;
                 }
             }
@@ -117,6 +332,7 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
             for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
                 if (!hasSupportBinF1(b, thrGE)) {
                     F2.removeValue(b, this);
+                    dom2.remove(b);
                     removed = true;
                 }
             }
@@ -124,6 +340,7 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
             for (int b = F2.getLB(); b <= F2.getUB(); b++) {
                 if (F2.contains(b) && !hasSupportBinF1(b, thrGE)) {
                     F2.removeValue(b, this);
+                    dom2.remove(b);
                     removed = true;
                 }
             }
@@ -133,74 +350,117 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
 
     /** Support check for value 'a' in F1 against current Dom(F2) and threshold 'thrGE' (>=). */
     private boolean hasSupportAinF2(int a, int thrGE) {
+        // Residue still valid: confirmed in O(1)
+        int r = resF1.get(a);
+        if (r >= 0 && F2.contains(r) && distanceMatrix.get(a, r) >= thrGE) return true;
+        int b = findSupportAinF2(a, thrGE);
+        if (b < 0) return false;
+        resF1.set(a, b);
+        resF2.set(b, a);   // multidirectional: (a, b) supports b as well
+        return true;
+    }
+
+    /** Support check for value 'b' in F2 against current Dom(F1) and threshold 'thrGE' (>=). */
+    private boolean hasSupportBinF1(int b, int thrGE) {
+        int r = resF2.get(b);
+        if (r >= 0 && F1.contains(r) && distanceMatrix.get(r, b) >= thrGE) return true;
+        int a = findSupportBinF1(b, thrGE);
+        if (a < 0) return false;
+        resF2.set(b, a);
+        resF1.set(a, b);
+        return true;
+    }
+
+    /** Searches a support for value 'a' in F1 within current Dom(F2) at threshold 'thrGE' (>=); -1 if none. */
+    private int findSupportAinF2(int a, int thrGE) {
         int baseGE = d_lb + 1;
         if (thrGE == baseGE && F2.hasEnumeratedDomain()) {
-
-            for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                if (supF1[a].get(b)) return true;
+            // Fast path: word-level AND of row a of supF1 with Dom(F2)
+            return dom2.firstCommon(F2, supF1, a);
+        }
+        // Surviving support at this threshold is a prefix of a's sorted neighbours;
+        // scan it directly whenever it is shorter than Dom(F2).
+        int len = idxF1.prefixLength(a, thrGE);
+        if (len == 0) return -1;
+        if (len <= F2.getDomainSize()) {
+            for (int k = 0; k < len; k++) {
+                int b = idxF1.neighbour(a, k);
+                if (F2.contains(b)) return b;
             }
-            return false;
+            return -1;
         }
-
         if (F2.hasEnumeratedDomain()) {
             for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                if (distanceMatrix[a][b] >= thrGE) return true;
+                if (distanceMatrix.get(a, b) >= thrGE) return b;
             }
-            return false;
+            return -1;
         } else {
             int lb = F2.getLB(), ub = F2.getUB();
             for (int b = lb; b <= ub; b++) {
-                if (F2.contains(b) && distanceMatrix[a][b] >= thrGE) return true;
+                if (F2.contains(b) && distanceMatrix.get(a, b) >= thrGE) return b;
             }
-            return false;
+            return -1;
         }
     }
 
-    /** Support check for value 'b' in F2 against current Dom(F1) and threshold 'thrGE' (>=). */
-    private boolean hasSupportBinF1(int b, int thrGE) {
+    /** Searches a support for value 'b' in F2 within current Dom(F1) at threshold 'thrGE' (>=); -1 if none. */
+    private int findSupportBinF1(int b, int thrGE) {
         int baseGE = d_lb + 1;
         if (thrGE == baseGE && F1.hasEnumeratedDomain()) {
-            for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                if (supF2[b].get(a)) return true;
+            // Fast path: word-level AND of row b of supF2 with Dom(F1)
+            return dom1.firstCommon(F1, supF2, b);
+        }
+        int len = idxF2.prefixLength(b, thrGE);
+        if (len == 0) return -1;
+        if (len <= F1.getDomainSize()) {
+            for (int k = 0; k < len; k++) {
+                int a = idxF2.neighbour(b, k);
+                if (F1.contains(a)) return a;
             }
-            return false;
+            return -1;
         }
         if (F1.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                if (distanceMatrix[a][b] >= thrGE) return true;
+                if (distanceMatrix.get(a, b) >= thrGE) return a;
             }
-            return false;
+            return -1;
         } else {
             int lb = F1.getLB(), ub = F1.getUB();
             for (int a = lb; a <= ub; a++) {
-                if (F1.contains(a) && distanceMatrix[a][b] >= thrGE) return true;
+                if (F1.contains(a) && distanceMatrix.get(a, b) >= thrGE) return a;
             }
-            return false;
+            return -1;
         }
     }
 
-    private int maxDistanceOverDomains() {
-        int best = Integer.MIN_VALUE;
-        if (F1.hasEnumeratedDomain() && F2.hasEnumeratedDomain()) {
-            for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                    int d = distanceMatrix[a][b];
-                    if (d > best) best = d;
-                }
-            }
-        } else {
-            int lb1 = F1.getLB(), ub1 = F1.getUB();
-            int lb2 = F2.getLB(), ub2 = F2.getUB();
-            for (int a = lb1; a <= ub1; a++) if (F1.contains(a)) {
-                for (int b = lb2; b <= ub2; b++) if (F2.contains(b)) {
-                    int d = distanceMatrix[a][b];
-                    if (d > best) best = d;
-                }
+    /** max dist[a][b] over Dom(F1) x Dom(F2); O(1) while the cached witness pair survives. */
+    private int pairUpperBound() {
+        int wa = ubA.get(), wb = ubB.get();
+        if (wa >= 0 && F1.contains(wa) && F2.contains(wb)) return ubVal.get();
+
+        int best = Integer.MIN_VALUE, bestA = -1, bestB = -1;
+        for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
+            int k = farthestPartnerPos(a);
+            if (k < P && idxF1.distance(a, k) > best) {
+                best = idxF1.distance(a, k);
+                bestA = a;
+                bestB = idxF1.neighbour(a, k);
             }
         }
+        ubA.set(bestA);
+        ubB.set(bestB);
+        ubVal.set(best);
         return best;
     }
 
+    /** Position of a's farthest partner still in Dom(F2), advancing (and trailing) bestPos[a]; P if none. */
+    private int farthestPartnerPos(int a) {
+        int k0 = bestPos.get(a), k = k0;
+        while (k < P && !F2.contains(idxF1.neighbour(a, k))) k++;
+        if (k != k0) bestPos.set(a, k);
+        return k;
+    }
+
     @Override
     public ESat isEntailed() {
         final int thrGE = Math.max(minDist.getLB(), d_lb + 1);
@@ -210,7 +470,7 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
         if (F1.hasEnumeratedDomain() && F2.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE && !exists; a = F1.nextValue(a)) {
                 for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                    if (distanceMatrix[a][b] >= thrGE) { exists = true; break; }
+                    if (distanceMatrix.get(a, b) >= thrGE) { exists = true; break; }
                 }
             }
         } else {
@@ -218,7 +478,7 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
             int lb2 = F2.getLB(), ub2 = F2.getUB();
             outer: for (int a = lb1; a <= ub1; a++) if (F1.contains(a)) {
                 for (int b = lb2; b <= ub2; b++) if (F2.contains(b)) {
-                    if (distanceMatrix[a][b] >= thrGE) { exists = true; break outer; }
+                    if (distanceMatrix.get(a, b) >= thrGE) { exists = true; break outer; }
                 }
             }
         }
@@ -233,7 +493,7 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
         if (F1.hasEnumeratedDomain() && F2.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
                 for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                    if (distanceMatrix[a][b] < thrGE) return false;
+                    if (distanceMatrix.get(a, b) < thrGE) return false;
                 }
             }
             return true;
@@ -242,7 +502,7 @@ public final class PropDistanceGT_v2 extends Propagator<IntVar> {
             int lb2 = F2.getLB(), ub2 = F2.getUB();
             for (int a = lb1; a <= ub1; a++) if (F1.contains(a)) {
                 for (int b = lb2; b <= ub2; b++) if (F2.contains(b)) {
-                    if (distanceMatrix[a][b] < thrGE) return false;
+                    if (distanceMatrix.get(a, b) < thrGE) return false;
                 }
             }
             return true;
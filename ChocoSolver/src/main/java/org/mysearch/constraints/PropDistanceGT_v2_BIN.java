@@ -8,37 +8,47 @@ import org.chocosolver.solver.exception.ContradictionException;
 import org.chocosolver.solver.variables.IntVar;
 import org.chocosolver.solver.variables.events.IntEventType;
 import org.chocosolver.util.ESat;
+import org.mysearch.util.DistanceIndex;
+import org.mysearch.util.DistanceMatrix;
 import org.mysearch.util.SharedBest;
 
-import java.util.BitSet;
+import java.util.Arrays;
 
 public final class PropDistanceGT_v2_BIN extends Propagator<IntVar> {
     private final IntVar F1, F2;
-    private final int[][] distanceMatrix;
+    private final DistanceMatrix distanceMatrix;
     private final SharedBest best;   // global, non-backtrackable
     private final int d_lb, P;
 
-    private final BitSet[] supF1, supF2;
+    private final SupportTable supF1, supF2;   // shared support rows at d_lb + 1
+    private final DomainWords dom1, dom2;  // word views of Dom(F1), Dom(F2)
+    private final DistanceIndex idxF1, idxF2;  // shared threshold-sorted neighbour lists
+
+    // Residual supports (AC3rm), re-validated before use so they need no trailing.
+    private final int[] resF1, resF2;
 
 
     private final IStateInt thr;
 
-    public PropDistanceGT_v2_BIN(IntVar F1, IntVar F2, SharedBest best, int[][] dist, int d_lb) {
+    public PropDistanceGT_v2_BIN(IntVar F1, IntVar F2, SharedBest best, DistanceMatrix dist, int d_lb) {
         super(new IntVar[]{F1, F2}, PropagatorPriority.BINARY, false);
         this.F1 = F1; this.F2 = F2;
         this.best = best;
         this.distanceMatrix = dist;
         this.d_lb = d_lb;
-        this.P = dist.length;
+        this.P = dist.size();
+        this.idxF1 = DistanceIndex.of(dist);
+        this.idxF2 = idxF1.transposed();
+        this.resF1 = new int[P];
+        this.resF2 = new int[P];
+        Arrays.fill(resF1, -1);
+        Arrays.fill(resF2, -1);
 
         int baseGE = d_lb + 1;
-        this.supF1 = new BitSet[P];
-        this.supF2 = new BitSet[P];
-        for (int a = 0; a < P; a++) supF1[a] = new BitSet(P);
-        for (int b = 0; b < P; b++) supF2[b] = new BitSet(P);
-        for (int a = 0; a < P; a++) for (int b = 0; b < P; b++) {
-            if (dist[a][b] >= baseGE) { supF1[a].set(b); supF2[b].set(a); }
-        }
+        this.supF1 = SupportTable.of(dist, baseGE);
+        this.supF2 = supF1.transposed();
+        this.dom1 = new DomainWords(P);
+        this.dom2 = new DomainWords(P);
 
         // (backtrackable)
         Solver s = F1.getModel().getSolver();
@@ -55,6 +65,8 @@ public final class PropDistanceGT_v2_BIN extends Propagator<IntVar> {
 
     @Override
     public void propagate(int evtmask) throws ContradictionException {
+        dom1.invalidate();   // other propagators may have changed the domains
+        dom2.invalidate();
         boolean changed;
         do {
             changed = false;
@@ -73,11 +85,11 @@ public final class PropDistanceGT_v2_BIN extends Propagator<IntVar> {
         boolean removed = false;
         if (F1.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                if (!hasSupportAinF2(a, T)) { F1.removeValue(a, this); removed = true; }
+                if (!hasSupportAinF2(a, T)) { F1.removeValue(a, this); dom1.remove(a); removed = true; }
             }
         } else {
             for (int a = F1.getLB(); a <= F1.getUB(); a++) {
-                if (F1.contains(a) && !hasSupportAinF2(a, T)) { F1.removeValue(a, this); removed = true; }
+                if (F1.contains(a) && !hasSupportAinF2(a, T)) { F1.removeValue(a, this); dom1.remove(a); removed = true; }
             }
         }
         return removed;
@@ -87,55 +99,94 @@ public final class PropDistanceGT_v2_BIN extends Propagator<IntVar> {
         boolean removed = false;
         if (F2.hasEnumeratedDomain()) {
             for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                if (!hasSupportBinF1(b, T)) { F2.removeValue(b, this); removed = true; }
+                if (!hasSupportBinF1(b, T)) { F2.removeValue(b, this); dom2.remove(b); removed = true; }
             }
         } else {
             for (int b = F2.getLB(); b <= F2.getUB(); b++) {
-                if (F2.contains(b) && !hasSupportBinF1(b, T)) { F2.removeValue(b, this); removed = true; }
+                if (F2.contains(b) && !hasSupportBinF1(b, T)) { F2.removeValue(b, this); dom2.remove(b); removed = true; }
             }
         }
         return removed;
     }
 
+    /** Support check for value 'a' in F1 against current Dom(F2) and threshold 'T' (>=). */
     private boolean hasSupportAinF2(int a, int T) {
+        // Residue still valid: confirmed in O(1)
+        int r = resF1[a];
+        if (r >= 0 && F2.contains(r) && distanceMatrix.get(a, r) >= T) return true;
+        int b = findSupportAinF2(a, T);
+        if (b < 0) return false;
+        resF1[a] = b;
+        resF2[b] = a;   // multidirectional: (a, b) supports b as well
+        return true;
+    }
+
+    /** Support check for value 'b' in F2 against current Dom(F1) and threshold 'T' (>=). */
+    private boolean hasSupportBinF1(int b, int T) {
+        int r = resF2[b];
+        if (r >= 0 && F1.contains(r) && distanceMatrix.get(r, b) >= T) return true;
+        int a = findSupportBinF1(b, T);
+        if (a < 0) return false;
+        resF2[b] = a;
+        resF1[a] = b;
+        return true;
+    }
+
+    private int findSupportAinF2(int a, int T) {
         int baseGE = d_lb + 1;
         if (T == baseGE && F2.hasEnumeratedDomain()) {
-            for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                if (supF1[a].get(b)) return true;
+            // Fast path: word-level AND of row a of supF1 with Dom(F2)
+            return dom2.firstCommon(F2, supF1, a);
+        }
+        // Surviving support at this threshold is a prefix of a's sorted neighbours;
+        // scan it directly whenever it is shorter than Dom(F2).
+        int len = idxF1.prefixLength(a, T);
+        if (len == 0) return -1;
+        if (len <= F2.getDomainSize()) {
+            for (int k = 0; k < len; k++) {
+                int b = idxF1.neighbour(a, k);
+                if (F2.contains(b)) return b;
             }
-            return false;
+            return -1;
         }
         if (F2.hasEnumeratedDomain()) {
             for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                if (distanceMatrix[a][b] >= T) return true;
+                if (distanceMatrix.get(a, b) >= T) return b;
             }
-            return false;
+            return -1;
         } else {
             for (int b = F2.getLB(); b <= F2.getUB(); b++) {
-                if (F2.contains(b) && distanceMatrix[a][b] >= T) return true;
+                if (F2.contains(b) && distanceMatrix.get(a, b) >= T) return b;
             }
-            return false;
+            return -1;
         }
     }
 
-    private boolean hasSupportBinF1(int b, int T) {
+    private int findSupportBinF1(int b, int T) {
         int baseGE = d_lb + 1;
         if (T == baseGE && F1.hasEnumeratedDomain()) {
-            for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                if (supF2[b].get(a)) return true;
+            // Fast path: word-level AND of row b of supF2 with Dom(F1)
+            return dom1.firstCommon(F1, supF2, b);
+        }
+        int len = idxF2.prefixLength(b, T);
+        if (len == 0) return -1;
+        if (len <= F1.getDomainSize()) {
+            for (int k = 0; k < len; k++) {
+                int a = idxF2.neighbour(b, k);
+                if (F1.contains(a)) return a;
             }
-            return false;
+            return -1;
         }
         if (F1.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
-                if (distanceMatrix[a][b] >= T) return true;
+                if (distanceMatrix.get(a, b) >= T) return a;
             }
-            return false;
+            return -1;
         } else {
             for (int a = F1.getLB(); a <= F1.getUB(); a++) {
-                if (F1.contains(a) && distanceMatrix[a][b] >= T) return true;
+                if (F1.contains(a) && distanceMatrix.get(a, b) >= T) return a;
             }
-            return false;
+            return -1;
         }
     }
 
@@ -147,7 +198,7 @@ public final class PropDistanceGT_v2_BIN extends Propagator<IntVar> {
         if (F1.hasEnumeratedDomain() && F2.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE && !exists; a = F1.nextValue(a)) {
                 for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                    if (distanceMatrix[a][b] >= T) { exists = true; break; }
+                    if (distanceMatrix.get(a, b) >= T) { exists = true; break; }
                 }
             }
         } else {
@@ -155,7 +206,7 @@ public final class PropDistanceGT_v2_BIN extends Propagator<IntVar> {
             int lb2 = F2.getLB(), ub2 = F2.getUB();
             outer: for (int a = lb1; a <= ub1; a++) if (F1.contains(a)) {
                 for (int b = lb2; b <= ub2; b++) if (F2.contains(b)) {
-                    if (distanceMatrix[a][b] >= T) { exists = true; break outer; }
+                    if (distanceMatrix.get(a, b) >= T) { exists = true; break outer; }
                 }
             }
         }
@@ -169,7 +220,7 @@ public final class PropDistanceGT_v2_BIN extends Propagator<IntVar> {
         if (F1.hasEnumeratedDomain() && F2.hasEnumeratedDomain()) {
             for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
                 for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
-                    if (distanceMatrix[a][b] < T) return false;
+                    if (distanceMatrix.get(a, b) < T) return false;
                 }
             }
             return true;
@@ -178,7 +229,7 @@ public final class PropDistanceGT_v2_BIN extends Propagator<IntVar> {
             int lb2 = F2.getLB(), ub2 = F2.getUB();
             for (int a = lb1; a <= ub1; a++) if (F1.contains(a)) {
                 for (int b = lb2; b <= ub2; b++) if (F2.contains(b)) {
-                    if (distanceMatrix[a][b] < T) return false;
+                    if (distanceMatrix.get(a, b) < T) return false;
                 }
             }
             return true;
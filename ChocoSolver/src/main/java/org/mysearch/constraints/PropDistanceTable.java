@@ -0,0 +1,265 @@
+package org.mysearch.constraints;
+
+import org.chocosolver.memory.IEnvironment;
+import org.chocosolver.memory.IStateInt;
+import org.chocosolver.solver.constraints.Propagator;
+import org.chocosolver.solver.constraints.PropagatorEventType;
+import org.chocosolver.solver.constraints.PropagatorPriority;
+import org.chocosolver.solver.exception.ContradictionException;
+import org.chocosolver.solver.variables.IntVar;
+import org.chocosolver.solver.variables.delta.IIntDeltaMonitor;
+import org.chocosolver.solver.variables.events.IntEventType;
+import org.chocosolver.util.ESat;
+import org.chocosolver.util.procedure.IntProcedure;
+import org.mysearch.util.DistanceMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Compact-table propagator for the pair table of M_tb:
+ *   allowed tuples = { (a, b, dist[a][b]) | a != b, dist[a][b] > d_lb }.
+ *
+ * The tuple set is never materialised: tuple (a, b, .) is bit b of row a of the shared
+ * SupportTable at threshold d_lb + 1, and its third value is read from the distance matrix,
+ * so every pair with the same d_lb uses the same P*P bits.
+ *
+ * Each propagator keeps the valid tuples of its pair (currTable) in a reversible sparse bit set
+ * holding only the words of the support table that are non-zero at the root; its index of
+ * non-zero words bounds the scans over all valid tuples, and its only trailed state is one int.
+ * As in compact-table, removals are applied to currTable first (a value of F1 clears its
+ * row, a value of F2 its column, the bounds of FF every tuple whose distance falls outside
+ * them) and the domains are then filtered against it, with residues:
+ *   a in F1 is supported iff row a is not empty;
+ *   b in F2 is supported iff some live row has bit b;
+ *   FF is bounded by the smallest and largest distance of a valid tuple.
+ * FF is expected to be a bounded variable: only its bounds are filtered.
+ */
+public final class PropDistanceTable extends Propagator<IntVar> {
+    private final IntVar F1, F2, FF;
+    private final DistanceMatrix distanceMatrix;
+    private final int P, W;
+    private final SupportTable tuples;      // shared: bit b of row a <=> (a, b, dist[a][b]) allowed, a != b aside
+
+    private final ReversibleSparseBitSet currTable;
+    private final int[] slot;               // slot[a*W + w] = word of currTable for row a, word w; -1 = empty at root
+    private final int[] cell;               // cell[k] = a*W + w of word k
+    private final int[] resF1;              // resF1[a] = word of row a that last had a valid tuple
+    private final int[] resF2;              // resF2[b] = row that last had a valid tuple in column b
+
+    // Distance range of the valid tuples, certified by witness tuples (a*P + b, -1 if unknown):
+    // tuples are only ever removed, so the extremes stand as long as their witnesses survive.
+    private final IStateInt loWitness, hiWitness;
+    // FF bounds already applied to currTable
+    private final IStateInt appliedLo, appliedHi;
+
+    private final IIntDeltaMonitor dm1, dm2;
+    private final IntProcedure onRemovedF1 = this::clearRow;
+    private final IntProcedure onRemovedF2 = this::clearColumn;
+
+    public PropDistanceTable(IntVar F1, IntVar F2, IntVar FF, DistanceMatrix dist, int d_lb) {
+        super(new IntVar[]{F1, F2, FF}, PropagatorPriority.TERNARY, true);
+        this.F1 = F1;
+        this.F2 = F2;
+        this.FF = FF;
+        this.distanceMatrix = dist;
+        this.P = dist.size();
+        this.W = DomainWords.wordCount(P);
+
+        this.tuples = SupportTable.of(dist, d_lb + 1);   // shared by every pair with this d_lb
+        long[] rows = tuples.words();
+        IEnvironment env = F1.getModel().getEnvironment();
+        this.slot = new int[P * W];
+        long[] root = new long[P * W];
+        int m = 0;
+        for (int a = 0; a < P; a++) {
+            int off = tuples.offset(a);
+            for (int w = 0; w < W; w++) {
+                long v = rows[off + w];
+                if (w == a >>> 6) v &= ~(1L << a);       // loc1 != loc2
+                slot[a * W + w] = v != 0L ? m : -1;
+                if (v != 0L) root[m++] = v;
+            }
+        }
+        this.cell = new int[m];
+        for (int c = 0; c < P * W; c++) {
+            if (slot[c] >= 0) cell[slot[c]] = c;
+        }
+        this.currTable = new ReversibleSparseBitSet(env, Arrays.copyOf(root, m));
+        this.resF1 = new int[P];
+        this.resF2 = new int[P];
+        this.loWitness = env.makeInt(-1);
+        this.hiWitness = env.makeInt(-1);
+        this.appliedLo = env.makeInt(Integer.MIN_VALUE);
+        this.appliedHi = env.makeInt(Integer.MAX_VALUE);
+        this.dm1 = F1.monitorDelta(this);
+        this.dm2 = F2.monitorDelta(this);
+    }
+
+    @Override
+    public int getPropagationConditions(int vIdx) {
+        if (vIdx <= 1) {
+            return IntEventType.REMOVE.getMask()
+                    | IntEventType.BOUND.getMask()
+                    | IntEventType.INSTANTIATE.getMask();
+        }
+        return IntEventType.BOUND.getMask()
+                | IntEventType.INSTANTIATE.getMask();
+    }
+
+    @Override
+    public void propagate(int evtmask) throws ContradictionException {
+        if (PropagatorEventType.isFullPropagation(evtmask)) {
+            dm1.startMonitoring();
+            dm2.startMonitoring();
+        }
+        currTable.restore();
+        // Align currTable with the current domains
+        for (int a = 0; a < P; a++) {
+            if (!F1.contains(a)) clearRow(a);
+        }
+        for (int b = 0; b < P; b++) {
+            if (!F2.contains(b)) clearColumn(b);
+        }
+        filter();
+    }
+
+    @Override
+    public void propagate(int idxVarInProp, int mask) throws ContradictionException {
+        currTable.restore();
+        // Both deltas are drained, so currTable is up to date whichever event comes first
+        dm1.forEachRemVal(onRemovedF1);
+        dm2.forEachRemVal(onRemovedF2);
+        filter();
+    }
+
+    private void filter() throws ContradictionException {
+        boolean changed;
+        do {
+            applyDistanceBounds();
+            changed = false;
+            for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
+                if (!hasSupportF1(a)) {
+                    F1.removeValue(a, this);
+                    clearRow(a);
+                    changed = true;
+                }
+            }
+            for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
+                if (!hasSupportF2(b)) {
+                    F2.removeValue(b, this);
+                    clearColumn(b);
+                    changed = true;
+                }
+            }
+            int lo = distanceAt(witness(loWitness, true));
+            int hi = distanceAt(witness(hiWitness, false));
+            FF.updateBounds(lo, hi, this);
+            appliedLo.set(lo);      // every valid tuple is within [lo, hi]
+            appliedHi.set(hi);
+        } while (changed);
+
+        if (F1.isInstantiated() && F2.isInstantiated()) setPassive();
+    }
+
+    /** Removes from currTable the tuples whose distance is outside the current bounds of FF. */
+    private void applyDistanceBounds() {
+        int lo = FF.getLB(), hi = FF.getUB();
+        if (lo <= appliedLo.get() && hi >= appliedHi.get()) return;
+        // Downwards, since clearing a word moves the last non-zero word into its place
+        for (int p = currTable.limit() - 1; p >= 0; p--) {
+            int k = currTable.nonZero(p), a = cell[k] / W, w = cell[k] % W;
+            long v = currTable.word(k), keep = v;
+            for (long bits = v; bits != 0L; bits &= bits - 1) {
+                int b = (w << 6) + Long.numberOfTrailingZeros(bits);
+                int d = distanceMatrix.get(a, b);
+                if (d < lo || d > hi) keep &= ~(1L << b);
+            }
+            currTable.set(k, keep);
+        }
+        appliedLo.set(lo);
+        appliedHi.set(hi);
+    }
+
+    private void clearRow(int a) {
+        for (int c = a * W, end = c + W; c < end; c++) {
+            if (slot[c] >= 0) currTable.set(slot[c], 0L);
+        }
+    }
+
+    private void clearColumn(int b) {
+        int w = b >>> 6;
+        long bit = 1L << b;
+        for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
+            int k = slot[a * W + w];
+            if (k >= 0) currTable.set(k, currTable.word(k) & ~bit);
+        }
+    }
+
+    private boolean hasSupportF1(int a) {
+        int base = a * W;
+        int res = slot[base + resF1[a]];
+        if (res >= 0 && currTable.word(res) != 0L) return true;
+        for (int w = 0; w < W; w++) {
+            int k = slot[base + w];
+            if (k >= 0 && currTable.word(k) != 0L) {
+                resF1[a] = w;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasSupportF2(int b) {
+        int r = resF2[b];
+        if (F1.contains(r) && isValid(r, b)) return true;
+        for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
+            if (isValid(a, b)) {
+                resF2[b] = a;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isValid(int a, int b) {
+        int k = slot[a * W + (b >>> 6)];
+        return k >= 0 && (currTable.word(k) & (1L << b)) != 0L;
+    }
+
+    /** Valid tuple with the smallest (largest) distance: the trailed witness if still valid, else rescanned. */
+    private int witness(IStateInt witness, boolean smallest) {
+        int t = witness.get();
+        if (t >= 0 && F1.contains(t / P) && isValid(t / P, t % P)) return t;
+        int best = -1, bestDist = 0;
+        for (int p = 0; p < currTable.limit(); p++) {
+            int k = currTable.nonZero(p), a = cell[k] / W, w = cell[k] % W;
+            for (long bits = currTable.word(k); bits != 0L; bits &= bits - 1) {
+                int b = (w << 6) + Long.numberOfTrailingZeros(bits);
+                int d = distanceMatrix.get(a, b);
+                if (best < 0 || (smallest ? d < bestDist : d > bestDist)) {
+                    best = a * P + b;
+                    bestDist = d;
+                }
+            }
+        }
+        witness.set(best);
+        return best;
+    }
+
+    private int distanceAt(int tuple) throws ContradictionException {
+        if (tuple < 0) fails();
+        return distanceMatrix.get(tuple / P, tuple % P);
+    }
+
+    @Override
+    public ESat isEntailed() {
+        if (F1.isInstantiated() && F2.isInstantiated()) {
+            int a = F1.getValue(), b = F2.getValue();
+            if (a == b || !tuples.get(a, b)) return ESat.FALSE;
+            int d = distanceMatrix.get(a, b);
+            if (!FF.contains(d)) return ESat.FALSE;
+            return FF.isInstantiated() ? ESat.TRUE : ESat.UNDEFINED;
+        }
+        return ESat.UNDEFINED;
+    }
+}
@@ -0,0 +1,179 @@
+package org.mysearch.constraints;
+
+import org.chocosolver.memory.IEnvironment;
+import org.chocosolver.memory.IStateInt;
+import org.chocosolver.solver.constraints.Propagator;
+import org.chocosolver.solver.constraints.PropagatorPriority;
+import org.chocosolver.solver.exception.ContradictionException;
+import org.chocosolver.solver.variables.IntVar;
+import org.chocosolver.solver.variables.events.IntEventType;
+import org.chocosolver.util.ESat;
+import org.mysearch.util.DistanceIndex;
+import org.mysearch.util.DistanceMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Two-dimensional element: FF = distanceMatrix.get(F1, F2), without the P*P index variable
+ * and the scalar constraint of the element model.
+ *
+ * F1 and F2 are arc consistent: a value stays while some value of the other side puts the
+ * pair distance in Dom(FF) (residues first, then either Dom of the other side or the window
+ * of a's sorted neighbours whose distance lies within the bounds of FF, whichever is shorter).
+ * FF is bound consistent: its bounds are the smallest and largest distance of a supported
+ * pair, certified by trailed witness pairs.
+ */
+public final class PropElement2D extends Propagator<IntVar> {
+    private final IntVar F1, F2, FF;
+    private final DistanceMatrix distanceMatrix;
+    private final int P;
+
+    private final DistanceIndex idxF1;  // row a: b's by descending dist[a][b]
+    private final DistanceIndex idxF2;  // row b: a's by descending dist[a][b]
+
+    private final int[] resF1;          // resF1[a] = some b that supported a, -1 if none yet
+    private final int[] resF2;          // resF2[b] = some a that supported b
+    private final IStateInt loWitness, hiWitness;   // pairs a*P + b with the extreme distances, -1 if unknown
+
+    public PropElement2D(IntVar F1, IntVar F2, IntVar FF, DistanceMatrix dist) {
+        super(new IntVar[]{F1, F2, FF}, PropagatorPriority.TERNARY, false);
+        this.F1 = F1;
+        this.F2 = F2;
+        this.FF = FF;
+        this.distanceMatrix = dist;
+        this.P = dist.size();
+        this.idxF1 = DistanceIndex.of(dist);
+        this.idxF2 = idxF1.transposed();
+        this.resF1 = new int[P];
+        this.resF2 = new int[P];
+        Arrays.fill(resF1, -1);
+        Arrays.fill(resF2, -1);
+        IEnvironment env = F1.getModel().getEnvironment();
+        this.loWitness = env.makeInt(-1);
+        this.hiWitness = env.makeInt(-1);
+    }
+
+    @Override
+    public int getPropagationConditions(int vIdx) {
+        return IntEventType.REMOVE.getMask()
+                | IntEventType.BOUND.getMask()
+                | IntEventType.INSTANTIATE.getMask();
+    }
+
+    @Override
+    public void propagate(int evtmask) throws ContradictionException {
+        boolean changed;
+        do {
+            changed = false;
+            for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
+                if (!hasSupportAinF2(a)) {
+                    F1.removeValue(a, this);
+                    changed = true;
+                }
+            }
+            for (int b = F2.getLB(); b != Integer.MAX_VALUE; b = F2.nextValue(b)) {
+                if (!hasSupportBinF1(b)) {
+                    F2.removeValue(b, this);
+                    changed = true;
+                }
+            }
+            // Holes of FF matter to F1/F2, so shrinking its bounds needs another pass
+            changed |= FF.updateBounds(smallestDistance(), largestDistance(), this);
+        } while (changed);
+
+        if (F1.isInstantiated() && F2.isInstantiated()) setPassive();
+    }
+
+    private boolean isSupport(int a, int b) {
+        return F1.contains(a) && F2.contains(b) && FF.contains(distanceMatrix.get(a, b));
+    }
+
+    private boolean hasSupportAinF2(int a) {
+        int r = resF1[a];
+        if (r >= 0 && isSupport(a, r)) return true;
+        int b = findSupport(a, idxF1, F2, FF.getLB(), FF.getUB(), false);
+        if (b < 0) return false;
+        resF1[a] = b;
+        resF2[b] = a;
+        return true;
+    }
+
+    private boolean hasSupportBinF1(int b) {
+        int r = resF2[b];
+        if (r >= 0 && isSupport(r, b)) return true;
+        int a = findSupport(b, idxF2, F1, FF.getLB(), FF.getUB(), true);
+        if (a < 0) return false;
+        resF2[b] = a;
+        resF1[a] = b;
+        return true;
+    }
+
+    /** A value of 'other' that puts the pair distance of 'v' in Dom(FF); -1 if none. */
+    private int findSupport(int v, DistanceIndex idx, IntVar other, int lo, int hi, boolean columns) {
+        int from = idx.prefixLength(v, hi + 1), to = idx.prefixLength(v, lo);
+        if (to - from <= other.getDomainSize()) {
+            for (int k = from; k < to; k++) {
+                int w = idx.neighbour(v, k);
+                if (other.contains(w) && FF.contains(idx.distance(v, k))) return w;
+            }
+            return -1;
+        }
+        for (int w = other.getLB(); w != Integer.MAX_VALUE; w = other.nextValue(w)) {
+            int d = columns ? distanceMatrix.get(w, v) : distanceMatrix.get(v, w);
+            if (FF.contains(d)) return w;
+        }
+        return -1;
+    }
+
+    /** Largest distance of a supported pair: one descending walk per value of F1, cut at the best so far. */
+    private int largestDistance() throws ContradictionException {
+        int t = hiWitness.get();
+        if (t >= 0 && isSupport(t / P, t % P)) return distanceMatrix.get(t / P, t % P);
+        int best = -1, bestDist = Integer.MIN_VALUE;
+        int hi = FF.getUB();
+        for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
+            for (int k = idxF1.prefixLength(a, hi + 1); k < P && idxF1.distance(a, k) > bestDist; k++) {
+                int b = idxF1.neighbour(a, k);
+                if (F2.contains(b) && FF.contains(idxF1.distance(a, k))) {
+                    best = a * P + b;
+                    bestDist = idxF1.distance(a, k);
+                    break;
+                }
+            }
+        }
+        if (best < 0) fails();
+        hiWitness.set(best);
+        return bestDist;
+    }
+
+    /** Smallest distance of a supported pair: one ascending walk per value of F1, cut at the best so far. */
+    private int smallestDistance() throws ContradictionException {
+        int t = loWitness.get();
+        if (t >= 0 && isSupport(t / P, t % P)) return distanceMatrix.get(t / P, t % P);
+        int best = -1, bestDist = Integer.MAX_VALUE;
+        int lo = FF.getLB();
+        for (int a = F1.getLB(); a != Integer.MAX_VALUE; a = F1.nextValue(a)) {
+            for (int k = idxF1.prefixLength(a, lo) - 1; k >= 0 && idxF1.distance(a, k) < bestDist; k--) {
+                int b = idxF1.neighbour(a, k);
+                if (F2.contains(b) && FF.contains(idxF1.distance(a, k))) {
+                    best = a * P + b;
+                    bestDist = idxF1.distance(a, k);
+                    break;
+                }
+            }
+        }
+        if (best < 0) fails();
+        loWitness.set(best);
+        return bestDist;
+    }
+
+    @Override
+    public ESat isEntailed() {
+        if (F1.isInstantiated() && F2.isInstantiated()) {
+            int d = distanceMatrix.get(F1.getValue(), F2.getValue());
+            if (!FF.contains(d)) return ESat.FALSE;
+            return FF.isInstantiated() ? ESat.TRUE : ESat.UNDEFINED;
+        }
+        return ESat.UNDEFINED;
+    }
+}
@@ -0,0 +1,122 @@
+package org.mysearch.constraints;
+
+import org.chocosolver.memory.IEnvironment;
+import org.chocosolver.memory.IStateInt;
+
+import java.util.Arrays;
+
+/**
+ * Reversible sparse bit set over a plain long[], laid out like compact-table's RSparseBitSet:
+ * index[0..limit) lists the non-zero words, so scans skip the words emptied since the root.
+ *
+ * Bits are only ever cleared. Instead of one trailed long per word, a word is copied to a
+ * backup stack the first time it changes in a world, and limit is saved the same way, so the
+ * only trailed state is the stack size. After a backtrack the trailed size is below the stack
+ * and restore() undoes the surplus entries, newest first; the owning propagator must call it
+ * at the start of every propagation, before reading or clearing any word.
+ */
+final class ReversibleSparseBitSet {
+    private static final int LIMIT = -1;    // backup entry holding limit rather than a word
+
+    private final IEnvironment env;
+    private final long[] words;
+    private final int[] index;              // index[0..limit) = non-zero words, in any order
+    private final int[] position;           // position[k] = slot of word k in index
+    private final int[] stamp;              // stamp[k] = world of word k's last backup, -1 if none
+    private int limit;
+    private int limitStamp = -1;
+
+    // Backup stack: word (or LIMIT), its previous value and previous stamp
+    private int[] savedWord = new int[16];
+    private long[] savedValue = new long[16];
+    private int[] savedStamp = new int[16];
+    private int size;
+    private final IStateInt top;            // stack size in the current world
+
+    /** Takes ownership of 'words' as the root content. */
+    ReversibleSparseBitSet(IEnvironment env, long[] words) {
+        this.env = env;
+        this.words = words;
+        int m = words.length;
+        this.index = new int[m];
+        this.position = new int[m];
+        this.stamp = new int[m];
+        Arrays.fill(stamp, -1);
+        for (int k = 0; k < m; k++) {
+            if (words[k] != 0L) index[limit++] = k;
+        }
+        for (int k = 0, z = limit; k < m; k++) {
+            if (words[k] == 0L) index[z++] = k;
+        }
+        for (int p = 0; p < m; p++) position[index[p]] = p;
+        this.top = env.makeInt(0);
+    }
+
+    /** Undoes the changes of the worlds left since the last call. */
+    void restore() {
+        int t = top.get();
+        while (size > t) {
+            size--;
+            int k = savedWord[size];
+            if (k == LIMIT) {
+                limit = (int) savedValue[size];
+                limitStamp = savedStamp[size];
+            } else {
+                words[k] = savedValue[size];
+                stamp[k] = savedStamp[size];
+            }
+        }
+    }
+
+    long word(int k) {
+        return words[k];
+    }
+
+    /** Number of non-zero words. */
+    int limit() {
+        return limit;
+    }
+
+    /** The p-th non-zero word, p < limit(). */
+    int nonZero(int p) {
+        return index[p];
+    }
+
+    /** Sets word k to 'v', which must be a subset of its current value. */
+    void set(int k, long v) {
+        long old = words[k];
+        if (v == old) return;
+        int world = env.getWorldIndex();
+        if (stamp[k] != world) {
+            push(k, old, stamp[k]);
+            stamp[k] = world;
+        }
+        words[k] = v;
+        if (v == 0L) {
+            if (limitStamp != world) {
+                push(LIMIT, limit, limitStamp);
+                limitStamp = world;
+            }
+            // Swap k with the last non-zero word; restoring limit brings it back
+            int p = position[k], last = index[--limit];
+            index[p] = last;
+            position[last] = p;
+            index[limit] = k;
+            position[k] = limit;
+        }
+    }
+
+    private void push(int k, long value, int previousStamp) {
+        if (size == savedWord.length) {
+            int cap = size * 2;
+            savedWord = Arrays.copyOf(savedWord, cap);
+            savedValue = Arrays.copyOf(savedValue, cap);
+            savedStamp = Arrays.copyOf(savedStamp, cap);
+        }
+        savedWord[size] = k;
+        savedValue[size] = value;
+        savedStamp[size] = previousStamp;
+        size++;
+        top.set(size);
+    }
+}
@@ -0,0 +1,94 @@
+package org.mysearch.constraints;
+
+import org.mysearch.util.DistanceIndex;
+import org.mysearch.util.DistanceMatrix;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Support rows for a fixed GE-threshold: row a = { b | dist[a][b] >= thrGE }, as words.
+ *
+ * Tables are shared: one per (distance matrix, threshold), so all DistanceGT propagators
+ * whose pairs have the same d_lb use the same table. Storage is one flat long[] with
+ * wordCount(P) words per row. On a symmetric matrix the table is its own transpose and
+ * serves as both supF1 and supF2. The registry holds its matrices weakly, so the tables of a
+ * matrix are released together with it.
+ */
+public final class SupportTable {
+
+    private static final Map<DistanceMatrix, Map<Integer, SupportTable>> REGISTRY = new WeakHashMap<>();
+
+    private final int W;            // words per row
+    private final long[] words;     // row a occupies words[a*W .. a*W + W)
+    private SupportTable transposed;
+
+    /** Shared table for 'dist' at threshold 'thrGE' (built once per matrix and threshold). */
+    public static SupportTable of(DistanceMatrix dist, int thrGE) {
+        Map<Integer, SupportTable> byThreshold;
+        synchronized (REGISTRY) {
+            byThreshold = REGISTRY.computeIfAbsent(dist, k -> new ConcurrentHashMap<>());
+        }
+        return byThreshold.computeIfAbsent(thrGE, t -> build(DistanceIndex.of(dist), t));
+    }
+
+    /**
+     * Builds the missing tables of 'dist' for all 'thresholds' in parallel (common fork-join
+     * pool), so that the propagators posted afterwards only look them up.
+     */
+    public static void prebuild(DistanceMatrix dist, int[] thresholds) {
+        DistanceIndex rows = DistanceIndex.of(dist);
+        Map<Integer, SupportTable> byThreshold;
+        synchronized (REGISTRY) {
+            byThreshold = REGISTRY.computeIfAbsent(dist, k -> new ConcurrentHashMap<>());
+        }
+        Arrays.stream(thresholds).distinct().filter(t -> !byThreshold.containsKey(t)).parallel()
+                .forEach(t -> byThreshold.putIfAbsent(t, build(rows, t)));
+    }
+
+    private static SupportTable build(DistanceIndex rows, int thrGE) {
+        SupportTable table = new SupportTable(rows, thrGE);
+        DistanceIndex cols = rows.transposed();
+        if (cols == rows) {
+            table.transposed = table;
+        } else {
+            table.transposed = new SupportTable(cols, thrGE);
+            table.transposed.transposed = table;
+        }
+        return table;
+    }
+
+    private SupportTable(DistanceIndex index, int thrGE) {
+        int P = index.size();
+        this.W = DomainWords.wordCount(P);
+        this.words = new long[P * W];
+        // Row a is the threshold prefix of a's sorted neighbours: no P^2 scan needed
+        for (int a = 0; a < P; a++) {
+            int len = index.prefixLength(a, thrGE);
+            int base = a * W;
+            for (int k = 0; k < len; k++) {
+                int b = index.neighbour(a, k);
+                words[base + (b >>> 6)] |= 1L << b;
+            }
+        }
+    }
+
+    /** Table over columns: row b = { a | dist[a][b] >= thrGE }. Same instance when dist is symmetric. */
+    public SupportTable transposed() {
+        return transposed;
+    }
+
+    public boolean get(int a, int b) {
+        return (words[a * W + (b >>> 6)] & (1L << b)) != 0L;
+    }
+
+    long[] words() {
+        return words;
+    }
+
+    int offset(int row) {
+        return row * W;
+    }
+}
@@ -0,0 +1,94 @@
+package org.mysearch.strategy;
+
+import org.chocosolver.solver.search.strategy.selectors.values.IntValueSelector;
+import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Farthest-point value ordering: the branching facility goes to the location of its domain
+ * that is farthest from the facilities already placed (largest minimum distance to them).
+ * Ties are broken by the larger total distance to the placed facilities (before any facility
+ * is placed: by the distance to the farthest other location), then by the smaller location.
+ *
+ * Distances to the placed facilities are cached per placement level: level k holds, for
+ * every location, the minimum and total distance to the first k placed facilities, so
+ * placing one more facility costs O(P), and a backtrack only drops levels. All arrays are
+ * allocated once. For an asymmetric matrix the smaller of dist[a][b] and dist[b][a] is used.
+ */
+public final class FarthestPointValueSelector implements IntValueSelector {
+
+    private final IntVar[] F_vars;
+    private final DistanceMatrix distanceMatrix;
+    private final int P;
+
+    private final int[] placedVar;      // facility placed at level k (k < depth)
+    private final int[] placedLoc;      // its location
+    private final boolean[] pushed;     // pushed[i]: facility i is on a level
+    private final int[][] minTo;        // minTo[k][v] = min distance from v to the facilities of levels < k
+    private final long[][] sumTo;       // sumTo[k][v] = tie-break key, total distance to them
+    private int depth;
+
+    public FarthestPointValueSelector(IntVar[] F_vars, DistanceMatrix distanceMatrix) {
+        this.F_vars = F_vars;
+        this.distanceMatrix = distanceMatrix;
+        this.P = distanceMatrix.size();
+        int F = F_vars.length;
+        this.placedVar = new int[F];
+        this.placedLoc = new int[F];
+        this.pushed = new boolean[F];
+        this.minTo = new int[F + 1][P];
+        this.sumTo = new long[F + 1][P];
+        Arrays.fill(minTo[0], Integer.MAX_VALUE);
+        for (int v = 0; v < P; v++) {
+            long far = 0;
+            for (int w = 0; w < P; w++) far = Math.max(far, distance(v, w));
+            sumTo[0][v] = far;
+        }
+    }
+
+    @Override
+    public int selectValue(IntVar var) {
+        sync();
+        int[] min = minTo[depth];
+        long[] sum = sumTo[depth];
+        int best = var.getLB();
+        for (int v = var.nextValue(best); v != Integer.MAX_VALUE; v = var.nextValue(v)) {
+            if (min[v] > min[best] || (min[v] == min[best] && sum[v] > sum[best])) best = v;
+        }
+        return best;
+    }
+
+    /** Brings the levels in line with the current instantiations. */
+    private void sync() {
+        // Drop the levels whose facility was freed (or moved) by backtracking
+        int keep = 0;
+        while (keep < depth) {
+            IntVar f = F_vars[placedVar[keep]];
+            if (!f.isInstantiated() || f.getValue() != placedLoc[keep]) break;
+            keep++;
+        }
+        while (depth > keep) pushed[placedVar[--depth]] = false;
+        // Push the facilities instantiated since (by decisions or by propagation)
+        for (int i = 0; i < F_vars.length; i++) {
+            if (pushed[i] || !F_vars[i].isInstantiated()) continue;
+            int loc = F_vars[i].getValue();
+            int[] min = minTo[depth], nextMin = minTo[depth + 1];
+            long[] sum = sumTo[depth], nextSum = sumTo[depth + 1];
+            for (int v = 0; v < P; v++) {
+                int d = distance(loc, v);
+                nextMin[v] = Math.min(min[v], d);
+                nextSum[v] = (depth == 0 ? 0 : sum[v]) + d;
+            }
+            placedVar[depth] = i;
+            placedLoc[depth] = loc;
+            pushed[i] = true;
+            depth++;
+        }
+    }
+
+    private int distance(int a, int b) {
+        return Math.min(distanceMatrix.get(a, b), distanceMatrix.get(b, a));
+    }
+}
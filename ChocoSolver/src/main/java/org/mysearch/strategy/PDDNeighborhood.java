@@ -0,0 +1,165 @@
+package org.mysearch.strategy;
+
+import org.chocosolver.solver.Cause;
+import org.chocosolver.solver.Solution;
+import org.chocosolver.solver.exception.ContradictionException;
+import org.chocosolver.solver.search.loop.lns.neighbors.INeighbor;
+import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceMatrix;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * LNS neighbourhoods for p-dispersion, used in turn (one per LNS restart):
+ *   closest pair : frees the two facilities of the closest pair of the last solution (the pair
+ *                  that defines minDist) and the facilities nearest to them;
+ *   random       : frees 'freeSize' facilities chosen uniformly at random;
+ *   propagation  : fixes facilities one at a time in random order, propagating after each,
+ *                  until only 'freeSize' facilities are left uninstantiated.
+ * Every other facility is fixed to its location in the last solution. When a neighbourhood
+ * is exhausted without improvement (restrictLess), the next ones free one more facility.
+ */
+public class PDDNeighborhood implements INeighbor {
+
+    private static final String[] KINDS = {"closest pair", "random", "propagation"};
+
+    private final IntVar[] F_vars;
+    private final DistanceMatrix distanceMatrix;
+    private final Random rnd;
+    private final int n;
+
+    private final int[] values;         // facility locations in the last solution
+    private final boolean[] free;
+    private final int[] order;
+    private int freeSize;
+    private int kind = -1;
+
+    private final long[] attempts = new long[KINDS.length];
+    private final long[] improvements = new long[KINDS.length];
+
+    public PDDNeighborhood(IntVar[] F_vars, DistanceMatrix distanceMatrix, long seed) {
+        this.F_vars = F_vars;
+        this.distanceMatrix = distanceMatrix;
+        this.rnd = new Random(seed);
+        this.n = F_vars.length;
+        this.values = new int[n];
+        this.free = new boolean[n];
+        this.order = new int[n];
+        this.freeSize = Math.min(n, 3);
+    }
+
+    @Override
+    public void init() {
+    }
+
+    @Override
+    public void recordSolution() {
+        for (int i = 0; i < n; i++) values[i] = F_vars[i].getValue();
+        if (kind >= 0) improvements[kind]++;
+    }
+
+    @Override
+    public void loadFromSolution(Solution solution) {
+        for (int i = 0; i < n; i++) values[i] = solution.getIntVal(F_vars[i]);
+    }
+
+    @Override
+    public void fixSomeVariables() throws ContradictionException {
+        kind = (kind + 1) % KINDS.length;
+        attempts[kind]++;
+        if (kind == 2) {
+            propagationGuided();
+            return;
+        }
+        if (kind == 0 && n >= 2) closestPair();
+        else randomSubset();   // also stands in for the closest pair below two facilities
+        for (int i = 0; i < n; i++) {
+            if (!free[i]) F_vars[i].instantiateTo(values[i], Cause.Null);
+        }
+    }
+
+    @Override
+    public void restrictLess() {
+        if (freeSize < n) freeSize++;
+    }
+
+    @Override
+    public boolean isSearchComplete() {
+        return freeSize >= n;
+    }
+
+    /** One line per neighbourhood: restarts and solutions found. */
+    public String statistics() {
+        StringBuilder sb = new StringBuilder();
+        for (int k = 0; k < KINDS.length; k++) {
+            sb.append("LNS ").append(KINDS[k]).append(":   neighbourhoods: ").append(attempts[k])
+                    .append("   solutions: ").append(improvements[k]).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private int distance(int i, int j) {
+        return i < j ? distanceMatrix.get(values[i], values[j]) : distanceMatrix.get(values[j], values[i]);
+    }
+
+    private void closestPair() {
+        int a = 0, b = 1, best = Integer.MAX_VALUE;
+        for (int i = 0; i < n - 1; i++) {
+            for (int j = i + 1; j < n; j++) {
+                int d = distance(i, j);
+                if (d < best) {
+                    best = d;
+                    a = i;
+                    b = j;
+                }
+            }
+        }
+        Arrays.fill(free, false);
+        free[a] = true;
+        free[b] = true;
+        // Then the facilities nearest to either end of the pair
+        for (int count = 2; count < freeSize; count++) {
+            int next = -1, nextDist = Integer.MAX_VALUE;
+            for (int k = 0; k < n; k++) {
+                if (free[k]) continue;
+                int d = Math.min(distance(a, k), distance(b, k));
+                if (d < nextDist) {
+                    nextDist = d;
+                    next = k;
+                }
+            }
+            free[next] = true;
+        }
+    }
+
+    private void randomSubset() {
+        shuffle();
+        Arrays.fill(free, false);
+        for (int k = 0; k < freeSize; k++) free[order[k]] = true;
+    }
+
+    private void propagationGuided() throws ContradictionException {
+        shuffle();
+        int left = 0;
+        for (IntVar f : F_vars) if (!f.isInstantiated()) left++;
+        for (int k = 0; k < n && left > freeSize; k++) {
+            IntVar f = F_vars[order[k]];
+            if (f.isInstantiated()) continue;
+            f.instantiateTo(values[order[k]], Cause.Null);
+            f.getModel().getSolver().propagate();
+            left = 0;
+            for (IntVar g : F_vars) if (!g.isInstantiated()) left++;
+        }
+    }
+
+    private void shuffle() {
+        for (int i = 0; i < n; i++) order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = rnd.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.mysearch.strategy;
+
+import org.chocosolver.memory.IStateInt;
+import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceIndex;
+import org.mysearch.util.DistanceMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Incremental view of the placed (instantiated) facilities of a search node, for the
+ * search wrappers:
+ *   placedMin()  : minimum pairwise distance among the placed facilities;
+ *   optimistic() : an upper bound on the objective of every solution below the node,
+ *                  min(placedMin, reach of each unplaced facility), where the reach of i is
+ *                  the largest distance from a location of Dom(i) to a placed facility,
+ *                  taken when that facility was placed (domains only shrink below).
+ *
+ * Facilities are pushed on levels in the order they get instantiated; level k holds both
+ * values for the first k placed facilities. Backtracking only drops levels; a query is O(F).
+ * Placing one facility costs O(F) distance lookups for placedMin. The reach is only kept
+ * when asked for (pruning): per unplaced facility it scans the domain when it has at most
+ * REACH_STEPS values, else at most REACH_STEPS entries of the sorted neighbour list. A walk
+ * that stops early keeps the distance where it stopped, an upper bound on the reach, so a
+ * placement stays O(F * REACH_STEPS).
+ *
+ * The reach depends on the domains at the time a level is pushed, so the number of valid
+ * levels is trailed: a level pushed at some node is dropped as soon as the search leaves
+ * that node's subtree, even if the same facility later gets the same location elsewhere.
+ */
+public final class PlacementBound {
+
+    private static final int REACH_STEPS = 32;
+
+    private final IntVar[] F_vars;
+    private final DistanceMatrix distanceMatrix;
+    private final DistanceIndex rows;      // row l: v's by descending dist[l][v] (null without reach)
+    private final DistanceIndex cols;      // row l: v's by descending dist[v][l]
+    private final int F, P;
+
+    private final int[] placedVar;         // facility pushed at level k
+    private final int[] placedLoc;         // its location
+    private final boolean[] pushed;
+    private final int[] minAt;             // minAt[k] = placedMin of the first k levels
+    private final int[][] reachAt;         // reachAt[k][i] = reach of facility i w.r.t. the first k levels (null without reach)
+    private final IStateInt validLevels;   // levels pushed in the current branch
+    private int depth;
+
+    /** With 'reach' false only placedMin() is maintained, and optimistic() equals it. */
+    public PlacementBound(IntVar[] F_vars, DistanceMatrix distanceMatrix, boolean reach) {
+        this.F_vars = F_vars;
+        this.distanceMatrix = distanceMatrix;
+        this.rows = reach ? DistanceIndex.of(distanceMatrix) : null;
+        this.cols = reach ? rows.transposed() : null;
+        this.F = F_vars.length;
+        this.P = distanceMatrix.size();
+        this.placedVar = new int[F];
+        this.placedLoc = new int[F];
+        this.pushed = new boolean[F];
+        this.minAt = new int[F + 1];
+        this.reachAt = reach ? new int[F + 1][F] : null;
+        minAt[0] = Integer.MAX_VALUE;
+        if (reach) Arrays.fill(reachAt[0], Integer.MAX_VALUE);
+        this.validLevels = F_vars[0].getModel().getEnvironment().makeInt(0);
+    }
+
+    /** Brings the levels in line with the current instantiations. */
+    public void sync() {
+        int keep = 0, valid = Math.min(depth, validLevels.get());
+        while (keep < valid) {
+            IntVar f = F_vars[placedVar[keep]];
+            if (!f.isInstantiated() || f.getValue() != placedLoc[keep]) break;
+            keep++;
+        }
+        while (depth > keep) pushed[placedVar[--depth]] = false;
+        for (int j = 0; j < F; j++) {
+            if (!pushed[j] && F_vars[j].isInstantiated()) push(j, F_vars[j].getValue());
+        }
+        if (validLevels.get() != depth) validLevels.set(depth);
+    }
+
+    private void push(int j, int loc) {
+        int min = minAt[depth];
+        for (int k = 0; k < depth; k++) {
+            min = Math.min(min, pairDistance(placedVar[k], placedLoc[k], j, loc));
+        }
+        if (reachAt != null) pushReach(j, loc);
+        placedVar[depth] = j;
+        placedLoc[depth] = loc;
+        pushed[j] = true;
+        minAt[++depth] = min;
+    }
+
+    private void pushReach(int j, int loc) {
+        int[] reach = reachAt[depth], next = reachAt[depth + 1];
+        for (int i = 0; i < F; i++) {
+            next[i] = reach[i];
+            if (i == j || F_vars[i].isInstantiated()) continue;
+            // Farthest location of Dom(i) from loc, with the pair orientation of the models
+            IntVar f = F_vars[i];
+            int far;
+            if (f.getDomainSize() <= REACH_STEPS) {
+                far = Integer.MIN_VALUE;
+                for (int v = f.getLB(); v != Integer.MAX_VALUE; v = f.nextValue(v)) {
+                    far = Math.max(far, pairDistance(j, loc, i, v));
+                }
+            } else {
+                DistanceIndex idx = j < i ? rows : cols;
+                int k = 0, steps = Math.min(P - 1, REACH_STEPS);
+                while (k < steps && !f.contains(idx.neighbour(loc, k))) k++;
+                far = idx.distance(loc, k);   // exact if found, else >= every distance left
+            }
+            next[i] = Math.min(next[i], far);
+        }
+    }
+
+    /** dist[F[min(i, j)]][F[max(i, j)]], as in the models. */
+    private int pairDistance(int i, int li, int j, int lj) {
+        return i < j ? distanceMatrix.get(li, lj) : distanceMatrix.get(lj, li);
+    }
+
+    public boolean allPlaced() {
+        return depth == F;
+    }
+
+    /** Minimum pairwise distance of the placed facilities (Integer.MAX_VALUE below two). */
+    public int placedMin() {
+        return minAt[depth];
+    }
+
+    public int optimistic() {
+        int bound = minAt[depth];
+        if (reachAt == null) return bound;
+        int[] reach = reachAt[depth];
+        for (int i = 0; i < F; i++) {
+            if (!pushed[i] && reach[i] < bound) bound = reach[i];
+        }
+        return bound;
+    }
+}
@@ -1,8 +1,10 @@
 package org.mysearch.strategy;
 
+import org.chocosolver.solver.Solver;
 import org.chocosolver.solver.search.strategy.decision.Decision;
 import org.chocosolver.solver.search.strategy.strategy.AbstractStrategy;
 import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceMatrix;
 import org.mysearch.util.SharedBest;
 
 public class StrategyWrapperPDDSimpleBIN extends AbstractStrategy<IntVar> {
@@ -10,15 +12,27 @@ public class StrategyWrapperPDDSimpleBIN extends AbstractStrategy<IntVar> {
     private final AbstractStrategy<IntVar> baseStrategy; // user-defined branching
     private final IntVar[] variables;                    // facility choices
     private final SharedBest minDist;
-    private final int[][] distanceMatrix;
+    private final PlacementBound placement;              // incremental min distance / optimistic bound
+    private final boolean prune;
+    private final Solver solver;
 
-    public StrategyWrapperPDDSimpleBIN(IntVar[] vars, SharedBest minDist, int[][] dist,
+    private long nodes, pruned;
+
+    public StrategyWrapperPDDSimpleBIN(IntVar[] vars, SharedBest minDist, DistanceMatrix dist,
                                        AbstractStrategy<IntVar> baseStrategy) {
+        this(vars, minDist, dist, baseStrategy, false);
+    }
+
+    /** With 'prune', subtrees whose optimistic bound cannot reach the shared threshold are cut. */
+    public StrategyWrapperPDDSimpleBIN(IntVar[] vars, SharedBest minDist, DistanceMatrix dist,
+                                       AbstractStrategy<IntVar> baseStrategy, boolean prune) {
         super(vars);
         this.variables = vars;
         this.minDist = minDist;
-        this.distanceMatrix = dist;
         this.baseStrategy = baseStrategy;
+        this.placement = new PlacementBound(vars, dist, prune);
+        this.prune = prune;
+        this.solver = vars[0].getModel().getSolver();
     }
 
     @Override
@@ -33,28 +47,33 @@ public class StrategyWrapperPDDSimpleBIN extends AbstractStrategy<IntVar> {
 
     @Override
     public Decision<IntVar> getDecision() {
+        placement.sync();
+
+        // 0) Cut: no solution below can reach the threshold (possibly raised by another worker)
+        if (prune) {
+            nodes++;
+            if (placement.optimistic() < minDist.get()) {
+                pruned++;
+                return new PruneDecision(solver, "optimistic bound below SharedBest");
+            }
+        }
+
         // 1) Delegate to the base strategy first
         Decision<IntVar> d = baseStrategy.getDecision();
         if (d != null) return d;
 
         // 2) Only act at a true leaf (all F instantiated)
-        for (IntVar v : variables) {
-            if (!v.isInstantiated()) return null;
-        }
+        if (!placement.allPlaced()) return null;
         if (variables.length < 2) return null;
 
-        // 3) Compute the min pairwise distance of the selected facilities
-        int dmin = Integer.MAX_VALUE;
-        for (int i = 0; i < variables.length - 1; i++) {
-            int ai = variables[i].getValue();
-            for (int j = i + 1; j < variables.length; j++) {
-                int aj = variables[j].getValue();
-                int dij = distanceMatrix[ai][aj];
-                if (dij < dmin) dmin = dij;
-            }
-        }
-        minDist.raiseTo(dmin+1);
+        // 3) The min pairwise distance of the selected facilities, maintained incrementally
+        minDist.raiseTo(placement.placedMin() + 1);
 
         return null;
     }
-}
\ No newline at end of file
+
+    /** "Bound pruning: N of M nodes cut". */
+    public String statistics() {
+        return "Bound pruning: " + pruned + " of " + nodes + " nodes cut\n";
+    }
+}
@@ -0,0 +1,57 @@
+package org.mysearch.strategy;
+
+import org.chocosolver.solver.Solver;
+import org.chocosolver.solver.search.strategy.decision.Decision;
+import org.chocosolver.solver.search.strategy.strategy.AbstractStrategy;
+import org.chocosolver.solver.variables.IntVar;
+import org.mysearch.util.DistanceMatrix;
+
+/**
+ * Bound-based cut for the models with a minDist objective variable (ternary, global and
+ * element models): a node is pruned as soon as the optimistic bound of its placed facilities
+ * cannot reach minDist.LB, which includes the objective cut of the last solution.
+ */
+public class StrategyWrapperPDDTernary extends AbstractStrategy<IntVar> {
+
+    private final AbstractStrategy<IntVar> baseStrategy;
+    private final IntVar minDist;
+    private final PlacementBound placement;
+    private final Solver solver;
+
+    private long nodes, pruned;
+
+    public StrategyWrapperPDDTernary(IntVar[] vars, IntVar minDist, DistanceMatrix dist,
+                                     AbstractStrategy<IntVar> baseStrategy) {
+        super(vars);
+        this.baseStrategy = baseStrategy;
+        this.minDist = minDist;
+        this.placement = new PlacementBound(vars, dist, true);
+        this.solver = vars[0].getModel().getSolver();
+    }
+
+    @Override
+    public boolean init() {
+        return baseStrategy.init();
+    }
+
+    @Override
+    public void remove() {
+        baseStrategy.remove();
+    }
+
+    @Override
+    public Decision<IntVar> getDecision() {
+        placement.sync();
+        nodes++;
+        if (placement.optimistic() < minDist.getLB()) {
+            pruned++;
+            return new PruneDecision(solver, "optimistic bound below minDist.LB");
+        }
+        return baseStrategy.getDecision();
+    }
+
+    /** "Bound pruning: N of M nodes cut". */
+    public String statistics() {
+        return "Bound pruning: " + pruned + " of " + nodes + " nodes cut\n";
+    }
+}
@@ -0,0 +1,41 @@
+package org.mysearch.strategy;
+
+import org.chocosolver.solver.search.strategy.selectors.variables.VariableSelector;
+import org.chocosolver.solver.variables.IntVar;
+
+/**
+ * Picks the uninstantiated facility with the tightest remaining d_cons row: the largest sum
+ * of d_cons[i][j] + 1 over the facilities j that are still to be placed (pairs with a placed
+ * facility are already reflected in the domains). Ties go to the smaller domain, then to the
+ * lower index.
+ */
+public final class TightestConstraintsVariableSelector implements VariableSelector<IntVar> {
+
+    private final int F;
+    private final int[] dCons;      // flat F*F
+
+    public TightestConstraintsVariableSelector(int[] dCons, int F) {
+        this.F = F;
+        this.dCons = dCons;
+    }
+
+    @Override
+    public IntVar getVariable(IntVar[] F_vars) {
+        int best = -1;
+        long bestScore = Long.MIN_VALUE;
+        for (int i = 0; i < F; i++) {
+            if (F_vars[i].isInstantiated()) continue;
+            long score = 0;
+            for (int j = 0; j < F; j++) {
+                if (j == i || F_vars[j].isInstantiated()) continue;
+                score += Math.max(0, dCons[Math.min(i, j) * F + Math.max(i, j)] + 1);
+            }
+            if (score > bestScore
+                    || (score == bestScore && F_vars[i].getDomainSize() < F_vars[best].getDomainSize())) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return best < 0 ? null : F_vars[best];
+    }
+}
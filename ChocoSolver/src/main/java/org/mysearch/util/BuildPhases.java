@@ -0,0 +1,52 @@
+package org.mysearch.util;
+
+import java.util.function.Supplier;
+
+/**
+ * Wall-clock time of each model-build phase (shared precomputation, posting, ...), so that
+ * the build is reported apart from the solve time.
+ */
+public final class BuildPhases {
+
+    private final long start = System.currentTimeMillis();
+    private final StringBuilder phases = new StringBuilder();
+    private String current;
+    private long currentStart;
+
+    public void run(String phase, Runnable work) {
+        begin(phase);
+        work.run();
+        end();
+    }
+
+    public <T> T call(String phase, Supplier<T> work) {
+        begin(phase);
+        T result = work.get();
+        end();
+        return result;
+    }
+
+    /** Starts 'phase', ending the current one if any. */
+    public void begin(String phase) {
+        end();
+        current = phase;
+        currentStart = System.currentTimeMillis();
+    }
+
+    /** Ends the current phase, if any; call before printing so the last phase is included. */
+    public void end() {
+        if (current == null) return;
+        if (phases.length() > 0) phases.append(", ");
+        phases.append(current).append(' ').append(System.currentTimeMillis() - currentStart).append(" ms");
+        current = null;
+    }
+
+    /**
+     * e.g. "Model build: distance index 40 ms, support tables 120 ms, posting 15 ms   (total 175 ms)".
+     * Only ended phases are listed; a phase still running is left open.
+     */
+    @Override
+    public String toString() {
+        return "Model build: " + phases + "   (total " + (System.currentTimeMillis() - start) + " ms)";
+    }
+}
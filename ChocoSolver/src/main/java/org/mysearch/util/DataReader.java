@@ -1,15 +1,20 @@
 package org.mysearch.util;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
-import java.util.List;
+import java.util.zip.CRC32;
 
 public class DataReader {
 
     public static class DistanceData {
-        public final int[] flatDistances;
+        public final DistanceMatrix distances;
         public final int[] flatConstraints;
         public final int points;
         public final int facilities;
@@ -17,9 +22,19 @@ public class DataReader {
         public final int[] flatCLDistances;
         public final int[] flatCLSPDistances;
         public final int[] clConstraints;
+        // facilityClass[i] = smallest facility with the same d_cons row as i (interchangeable facilities)
+        public final int[] facilityClass;
+        // Rank-compressed data only: rankValues[r] = distance with rank r (null when distances are raw)
+        public final int[] rankValues;
+        // Preprocessed facility domains: facilityDomains[i] = sorted locations allowed for facility i (null = 0..points-1)
+        public final int[][] facilityDomains;
 
-        public DistanceData(int[] flatDistances, int[] flatConstraints, int points, int facilities, int clients, int[] flatCLDistances, int[] flatCLSPDistances, int[] clConstraints) {
-            this.flatDistances = flatDistances;
+        public DistanceData(DistanceMatrix distances, int[] flatConstraints, int points, int facilities, int clients, int[] flatCLDistances, int[] flatCLSPDistances, int[] clConstraints) {
+            this(distances, flatConstraints, points, facilities, clients, flatCLDistances, flatCLSPDistances, clConstraints, null, null);
+        }
+
+        public DistanceData(DistanceMatrix distances, int[] flatConstraints, int points, int facilities, int clients, int[] flatCLDistances, int[] flatCLSPDistances, int[] clConstraints, int[] rankValues, int[][] facilityDomains) {
+            this.distances = distances;
             this.flatConstraints = flatConstraints;
             this.points = points;
             this.facilities = facilities;
@@ -27,93 +42,337 @@ public class DataReader {
             this.flatCLDistances = flatCLDistances;
             this.flatCLSPDistances = flatCLSPDistances;
             this.clConstraints = clConstraints;
+            this.facilityClass = facilityClasses(flatConstraints, facilities);
+            this.rankValues = rankValues;
+            this.facilityDomains = facilityDomains;
+        }
+
+        /** Same instance restricted to the given facility domains. */
+        public DistanceData withFacilityDomains(int[][] domains) {
+            return new DistanceData(distances, flatConstraints, points, facilities, clients, flatCLDistances, flatCLSPDistances, clConstraints, rankValues, domains);
+        }
+
+        /** Locations allowed for facility i. */
+        public int[] facilityDomain(int i) {
+            if (facilityDomains != null) return facilityDomains[i];
+            int[] all = new int[points];
+            for (int v = 0; v < points; v++) all[v] = v;
+            return all;
+        }
+
+        /** Real distance for a (possibly rank-compressed) distance or objective value. */
+        public int distanceValue(int v) {
+            return rankValues == null ? v : rankValues[v];
+        }
+
+        /**
+         * Same instance with every distance replaced by its rank among the sorted distinct
+         * distances. A d_cons value c becomes (number of distinct distances <= c) - 1, so that
+         * dist > c  <=>  rank(dist) > c' and all models keep their strict d_cons semantics.
+         */
+        public DistanceData toRanks() {
+            if (rankValues != null) return this;
+            int[] values = distances.distinctValues();
+            DistanceMatrix rankDistances = distances.map(d -> Arrays.binarySearch(values, d));
+            int[] rankConstraints = new int[flatConstraints.length];
+            for (int i = 0; i < flatConstraints.length; i++) {
+                rankConstraints[i] = countAtMost(values, flatConstraints[i]) - 1;
+            }
+            return new DistanceData(rankDistances, rankConstraints, points, facilities, clients, flatCLDistances, flatCLSPDistances, clConstraints, values, facilityDomains);
+        }
+
+        private static int countAtMost(int[] sorted, int c) {
+            int lo = 0, hi = sorted.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (sorted[mid] <= c) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        /**
+         * Facilities i and j are interchangeable when d_cons[i][k] == d_cons[j][k] for every other k:
+         * swapping them maps solutions to solutions. With a symmetric d_cons the relation is an
+         * equivalence; each class is identified by its smallest member.
+         */
+        private static int[] facilityClasses(int[] dCons, int F) {
+            int[] cls = new int[F];
+            for (int i = 0; i < F; i++) {
+                cls[i] = i;
+                for (int r = 0; r < i; r++) {
+                    if (cls[r] == r && sameRow(dCons, F, r, i)) {
+                        cls[i] = r;
+                        break;
+                    }
+                }
+            }
+            return cls;
+        }
+
+        private static boolean sameRow(int[] dCons, int F, int i, int j) {
+            for (int k = 0; k < F; k++) {
+                if (k == i || k == j) continue;
+                if (dCons[i * F + k] != dCons[j * F + k]) return false;
+            }
+            return true;
         }
     }
 
     public static DistanceData readDistanceAndConstraints(String filePath, String decimalPoints) throws IOException {
+        return readDistanceAndConstraints(filePath, decimalPoints, false);
+    }
+
+    /** With 'upperTriangle', distances are stored as a symmetric upper triangle (about half the memory). */
+    public static DistanceData readDistanceAndConstraints(String filePath, String decimalPoints, boolean upperTriangle) throws IOException {
         int dPoints = Integer.parseInt(decimalPoints);
-        List<String> lines = Files.readAllLines(Paths.get(filePath))
-                .stream()
-                .filter(l -> !l.trim().isEmpty())
-                .toList();
+        if (isBinaryInstance(Paths.get(filePath))) {
+            DistanceData data = readBinary(Paths.get(filePath), dPoints);
+            if (!upperTriangle) return data;
+            return new DistanceData(data.distances.asUpperTriangle(), data.flatConstraints, data.points, data.facilities, 0, null, null, null);
+        }
+        InstanceScanner in = new InstanceScanner(Paths.get(filePath));
 
         // First line contains: points facilities
-        String[] header = lines.get(0).trim().split("\\s+");
-        int points = Integer.parseInt(header[0]);
+        in.beginLine();
+        int points = in.nextInt();
         System.out.println("Found " + points + " points");
 
-        int facilities = Integer.parseInt(header[1]);
+        int facilities = in.nextInt();
         System.out.println("Found " + facilities + " facilities");
-        int[][] distances = new int[points][points];
-        //int distLen = points * (points - 1) / 2;
-
-        int distIdx = 1;
-
-//        if (format.equalsIgnoreCase("flat")) {
-//            for (int i = 1; i <= distLen; i++) {
-//                String[] parts = lines.get(i).split("\\s+");
-//                int a = Integer.parseInt(parts[0]);
-//                int b = Integer.parseInt(parts[1]);
-//                int val = (int) (Double.parseDouble(parts[2]) * 1_000_000);
-//                distances[a][b] = val;
-//                distances[b][a] = val;
-//            }
-//            distIdx = distLen + 1;
-//        } else if (format.equalsIgnoreCase("upper")) {
-//            for (int i = 0; i < points - 1; i++) {
-//                for (int j = i + 1; j < points; j++) {
-//                    String[] parts = lines.get(distIdx++).split("\\s+");
-//                    int a = Integer.parseInt(parts[0]);
-//                    int b = Integer.parseInt(parts[1]);
-//                    int val = (int) (Double.parseDouble(parts[2]) * 1_000_000);
-//                    distances[a][b] = val;
-//                    distances[b][a] = val;
-//                }
-//            }
-//        } else {
-//            throw new IllegalArgumentException("Unsupported format: " + format);
-//        }
+        in.endLine();
 
+        // Upper-triangle distances, assigned in (i, j) order
+        DistanceMatrix.Builder distances = DistanceMatrix.builder(points, upperTriangle);
         for (int i = 0; i < points - 1; i++) {
             for (int j = i + 1; j < points; j++) {
-                String[] parts = lines.get(distIdx++).split("\\s+");
-                //System.out.println(Arrays.toString(parts));
-                int a = Integer.parseInt(parts[0]);
-                int b = Integer.parseInt(parts[1]);
-                int val = (int) (Double.parseDouble(parts[2]) * Math.pow(10,dPoints)); // * 1_000_000);
-                distances[i][j] = val;
-                distances[j][i] = val;
+                in.beginLine();
+                in.nextInt();   // a
+                in.nextInt();   // b
+                int val = in.nextScaled(dPoints);
+                in.endLine();
+                distances.setSymmetric(i, j, val);
             }
         }
-        //System.out.println(Arrays.deepToString(distances));
-        //print2DArray(distances);
-        // Flatten distances
-        int[] flatDistances = new int[points * points];
-        for (int i = 0; i < points; i++) {
-            System.arraycopy(distances[i], 0, flatDistances, i * points, points);
-        }
 
         int consLen = facilities * (facilities - 1) / 2;
-        int[][] dCons = new int[facilities][facilities];
+        int[] flatConstraints = new int[facilities * facilities];
         for (int i = 0; i < consLen; i++) {
-            String[] parts = lines.get(distIdx + i).split("\\s+");
-            int a = Integer.parseInt(parts[0]);
-            int b = Integer.parseInt(parts[1]);
-            int val = (int) (Double.parseDouble(parts[2]) * Math.pow(10,dPoints));//* 1_000_000);
-            dCons[a][b] = val;
-            dCons[b][a] = val;
+            in.beginLine();
+            int a = in.nextInt();
+            int b = in.nextInt();
+            int val = in.nextScaled(dPoints);
+            in.endLine();
+            flatConstraints[a * facilities + b] = val;
+            flatConstraints[b * facilities + a] = val;
         }
 
-        //print2DArray(dCons);
+        return new DistanceData(distances.build(), flatConstraints, points, facilities, 0, null, null, null);
+    }
 
-        //System.out.println(Arrays.deepToString(dCons));
+    /*
+     * Binary instance format (big-endian):
+     *   int    magic          'P' 'D' 'D' 'B'
+     *   int    version        BINARY_VERSION
+     *   int    decimalPoints  scaling used for every value below
+     *   int    points, facilities
+     *   int[]  distances      points*points, row-major (scaled)
+     *   int[]  dCons          facilities*facilities, row-major (scaled)
+     *   long   CRC32 of every preceding byte
+     */
+    private static final int BINARY_MAGIC = 0x50444442;
+    private static final int BINARY_VERSION = 1;
+    private static final int BINARY_HEADER = 5 * Integer.BYTES;
+
+    private static boolean isBinaryInstance(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(Integer.BYTES);
+            while (head.hasRemaining() && ch.read(head) >= 0) { }
+            return !head.hasRemaining() && head.getInt(0) == BINARY_MAGIC;
+        }
+    }
+
+    /** Writes 'data' (scaled with 'decimalPoints') in the binary instance format. */
+    public static void writeBinary(DistanceData data, int decimalPoints, Path out) throws IOException {
+        int P = data.points, F = data.facilities;
+        ByteBuffer buf = ByteBuffer.allocate(BINARY_HEADER + (P * P + F * F) * Integer.BYTES + Long.BYTES);
+        buf.putInt(BINARY_MAGIC).putInt(BINARY_VERSION).putInt(decimalPoints).putInt(P).putInt(F);
+        buf.asIntBuffer().put(data.distances.toFlatArray()).put(data.flatConstraints);
+        buf.position(buf.position() + (P * P + F * F) * Integer.BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(buf.duplicate().flip());
+        buf.putLong(crc.getValue());
+        buf.flip();
+        try (FileChannel ch = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) ch.write(buf);
+        }
+    }
+
+    /** Maps a binary instance; it must have been written with the same decimalPoints. */
+    public static DistanceData readBinary(Path path, int decimalPoints) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        }
+        if (buf.remaining() < BINARY_HEADER + Long.BYTES || buf.getInt(0) != BINARY_MAGIC) {
+            throw new IOException("Not a binary pDD instance: " + path);
+        }
+        int version = buf.getInt(4);
+        if (version != BINARY_VERSION) {
+            throw new IOException("Unsupported binary instance version " + version + ": " + path);
+        }
+        int fileDecimals = buf.getInt(8);
+        if (fileDecimals != decimalPoints) {
+            throw new IOException("Binary instance " + path + " was scaled with decimalPoints=" + fileDecimals
+                    + ", requested " + decimalPoints);
+        }
+        int points = buf.getInt(12);
+        int facilities = buf.getInt(16);
+        long payload = BINARY_HEADER + ((long) points * points + (long) facilities * facilities) * Integer.BYTES;
+        if (buf.remaining() != payload + Long.BYTES) {
+            throw new IOException("Truncated binary instance: " + path);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buf.slice(0, (int) payload));
+        if (crc.getValue() != buf.getLong((int) payload)) {
+            throw new IOException("Checksum mismatch in binary instance: " + path);
+        }
+        System.out.println("Found " + points + " points");
+        System.out.println("Found " + facilities + " facilities");
 
+        int[] flatDistances = new int[points * points];
         int[] flatConstraints = new int[facilities * facilities];
-        for (int i = 0; i < facilities; i++) {
-            System.arraycopy(dCons[i], 0, flatConstraints, i * facilities, facilities);
+        IntBuffer ints = buf.slice(BINARY_HEADER, (int) payload - BINARY_HEADER).asIntBuffer();
+        ints.get(flatDistances).get(flatConstraints);
+        return new DistanceData(DistanceMatrix.of(flatDistances, points), flatConstraints, points, facilities, 0, null, null, null);
+    }
+
+    /**
+     * Line-oriented tokenizer over a memory-mapped instance file. Integers and decimals are
+     * parsed straight from the bytes (no String per line); blank lines are skipped and any
+     * token after the ones read on a line is ignored, as with the previous split-based reader.
+     */
+    static final class InstanceScanner {
+        private static final long OVERFLOW = 1L << 32;   // saturation value, outside the int range
+
+        private final Path path;
+        private final ByteBuffer buf;
+
+        InstanceScanner(Path path) throws IOException {
+            this.path = path;
+            try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+                this.buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+        }
+
+        /** Moves to the first token of the next non-blank line. */
+        void beginLine() throws IOException {
+            while (buf.hasRemaining() && isSpace(buf.get(buf.position()), true)) buf.get();
+            if (!buf.hasRemaining()) throw new IOException("Unexpected end of file: " + path);
+        }
+
+        /** Skips the rest of the current line. */
+        void endLine() {
+            while (buf.hasRemaining() && buf.get() != '\n') { }
+        }
+
+        int nextInt() throws IOException {
+            skipBlanks();
+            int start = buf.position();
+            boolean negative = sign();
+            long v = 0;
+            int digits = 0;
+            while (buf.hasRemaining() && isDigit(buf.get(buf.position()))) {
+                v = Math.min(v * 10 + (buf.get() - '0'), OVERFLOW);
+                digits++;
+            }
+            if (digits == 0) throw error();
+            return toInt(negative ? -v : v, start, 0);
+        }
+
+        /**
+         * Decimal token scaled by 10^dPoints, truncated toward zero: "12.3456" with dPoints = 2
+         * gives 1234. The scaling is exact (no double rounding); exponent notation falls back
+         * to Double.parseDouble. A scaled value outside the int range is rejected with an
+         * IllegalArgumentException naming the line and the scale.
+         */
+        int nextScaled(int dPoints) throws IOException {
+            skipBlanks();
+            int start = buf.position();
+            boolean negative = sign();
+            long v = 0;
+            int digits = 0;
+            while (buf.hasRemaining() && isDigit(buf.get(buf.position()))) {
+                v = Math.min(v * 10 + (buf.get() - '0'), OVERFLOW);
+                digits++;
+            }
+            int scale = 0;
+            if (buf.hasRemaining() && buf.get(buf.position()) == '.') {
+                buf.get();
+                while (buf.hasRemaining() && isDigit(buf.get(buf.position()))) {
+                    int d = buf.get() - '0';
+                    if (scale < dPoints) {
+                        v = Math.min(v * 10 + d, OVERFLOW);
+                        scale++;
+                    }
+                    digits++;
+                }
+            }
+            if (digits == 0) throw error();
+            if (buf.hasRemaining() && (buf.get(buf.position()) | 0x20) == 'e') {
+                while (buf.hasRemaining() && !isSpace(buf.get(buf.position()), true)) buf.get();
+                byte[] token = new byte[buf.position() - start];
+                buf.get(start, token);
+                double scaled = Double.parseDouble(new String(token, StandardCharsets.US_ASCII)) * Math.pow(10, dPoints);
+                return toInt(Math.max(-OVERFLOW, Math.min((long) scaled, OVERFLOW)), start, dPoints);
+            }
+            for (; scale < dPoints; scale++) v = Math.min(v * 10, OVERFLOW);
+            return toInt(negative ? -v : v, start, dPoints);
+        }
+
+        /** v as an int; v is saturated at +-OVERFLOW by the parsers, so any overflow shows here. */
+        private int toInt(long v, int start, int dPoints) {
+            if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Value at line " + lineAt(start) + " of " + path
+                        + " does not fit in an int" + (dPoints > 0 ? " when scaled by 10^" + dPoints
+                        + "; use fewer decimal points" : ""));
+            }
+            return (int) v;
         }
 
-        return new DistanceData(flatDistances, flatConstraints, points, facilities, 0, null, null, null);
+        private int lineAt(int pos) {
+            int line = 1;
+            for (int i = 0; i < pos; i++) {
+                if (buf.get(i) == '\n') line++;
+            }
+            return line;
+        }
+
+        private boolean sign() {
+            if (!buf.hasRemaining()) return false;
+            byte c = buf.get(buf.position());
+            if (c == '-' || c == '+') {
+                buf.get();
+                return c == '-';
+            }
+            return false;
+        }
+
+        private void skipBlanks() {
+            while (buf.hasRemaining() && isSpace(buf.get(buf.position()), false)) buf.get();
+        }
+
+        private static boolean isSpace(byte c, boolean newlines) {
+            return c == ' ' || c == '\t' || c == '\r' || (newlines && c == '\n');
+        }
+
+        private static boolean isDigit(byte c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private IOException error() {
+            return new IOException("Malformed number at byte " + buf.position() + " of " + path);
+        }
     }
 
 
@@ -0,0 +1,115 @@
+package org.mysearch.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * Per-point neighbour lists sorted by descending distance.
+ *
+ * Row a lists every point b ordered by dist[a][b] (largest first, ties by b).
+ * For a GE-threshold T, the points b with dist[a][b] >= T are exactly the first
+ * prefixLength(a, T) entries of row a, so a support check at any threshold only
+ * has to look at the surviving support, not at the whole domain.
+ *
+ * Neighbours are stored as chars (P*P must fit in an int, so P < 65536) and the sorted
+ * distances in the storage width of the matrix (unsigned byte, unsigned short or int), as a
+ * full P x P DistanceMatrix whose entry (a, k) is the distance to the k-th farthest point.
+ *
+ * One index is built per distance matrix and shared by all propagators posted on it. The
+ * cache holds its matrices weakly (DistanceMatrix keeps identity equality), so an index is
+ * released with its matrix, e.g. the original one once --ranks or --triangle replaced it.
+ */
+public final class DistanceIndex {
+
+    private static final Map<DistanceMatrix, DistanceIndex> CACHE = new WeakHashMap<>();
+
+    private final int P;
+    private final char[] order;                 // order[a*P + k]      = k-th farthest point from a
+    private final DistanceMatrix sortedDist;    // sortedDist.get(a, k) = dist[a][order[a*P + k]]
+    private DistanceIndex transposed;
+
+    /** Shared index over the rows of 'dist' (built once per matrix). */
+    public static synchronized DistanceIndex of(DistanceMatrix dist) {
+        DistanceIndex idx = CACHE.get(dist);
+        if (idx == null) {
+            idx = new DistanceIndex(dist, false);
+            if (dist.isSymmetric()) {
+                idx.transposed = idx;
+            } else {
+                idx.transposed = new DistanceIndex(dist, true);
+                idx.transposed.transposed = idx;
+            }
+            CACHE.put(dist, idx);
+        }
+        return idx;
+    }
+
+    private DistanceIndex(DistanceMatrix dist, boolean columns) {
+        this.P = dist.size();
+        this.order = new char[P * P];
+        int width = dist.entryBytes();
+        byte[] bytes = width == Byte.BYTES ? new byte[P * P] : null;
+        short[] shorts = width == Short.BYTES ? new short[P * P] : null;
+        int[] ints = width == Integer.BYTES ? new int[P * P] : null;
+        // Rows are independent: sorted in parallel on the common fork-join pool
+        IntStream.range(0, P).parallel().forEach(a -> {
+            long[] keys = new long[P];
+            for (int b = 0; b < P; b++) {
+                int d = columns ? dist.get(b, a) : dist.get(a, b);
+                // Ascending sort on (-d, b) == descending distance, ties by index
+                keys[b] = (-(long) d << 32) | b;
+            }
+            Arrays.sort(keys);
+            int base = a * P;
+            for (int k = 0; k < P; k++) {
+                int b = (int) keys[k];
+                order[base + k] = (char) b;
+                int d = (int) -(keys[k] >> 32);
+                if (bytes != null) bytes[base + k] = (byte) d;
+                else if (shorts != null) shorts[base + k] = (short) d;
+                else ints[base + k] = d;
+            }
+        });
+        this.sortedDist = bytes != null ? new DistanceMatrix.FullBytes(bytes, P)
+                : shorts != null ? new DistanceMatrix.FullShorts(shorts, P)
+                : new DistanceMatrix.FullInts(ints, P);
+    }
+
+    /** Heap used by the index of 'dist' (both directions for an asymmetric matrix), built or not. */
+    static long footprint(DistanceMatrix dist) {
+        long perDirection = (long) dist.size() * dist.size() * (Character.BYTES + dist.entryBytes());
+        return dist.isSymmetric() ? perDirection : 2 * perDirection;
+    }
+
+    /** Index over the columns: neighbour(b, k) iterates the a's with the largest dist[a][b]. */
+    public DistanceIndex transposed() {
+        return transposed;
+    }
+
+    public int size() {
+        return P;
+    }
+
+    /** Number of points b with dist[a][b] >= thrGE (they are the first entries of row a). */
+    public int prefixLength(int a, int thrGE) {
+        int lo = 0, hi = P;   // first k in [lo, hi) with distance(a, k) < thrGE
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedDist.get(a, mid) >= thrGE) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** k-th farthest point from a. */
+    public int neighbour(int a, int k) {
+        return order[a * P + k];
+    }
+
+    /** Distance from a to its k-th farthest point. */
+    public int distance(int a, int k) {
+        return sortedDist.get(a, k);
+    }
+}
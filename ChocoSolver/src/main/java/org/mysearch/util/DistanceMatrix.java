@@ -0,0 +1,346 @@
+package org.mysearch.util;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The P x P (scaled) distance matrix, stored once in a single flat array and shared by the
+ * reader, the model builders, the propagators and the search strategies.
+ *
+ * Two layouts:
+ *   full           : P*P entries, row-major;
+ *   upper triangle : P*(P+1)/2 entries (a <= b, diagonal included), for symmetric matrices;
+ *                    get(a, b) == get(b, a).
+ * Entries are stored as unsigned bytes, unsigned shorts or ints, whichever is the narrowest
+ * that holds every value.
+ */
+public abstract class DistanceMatrix {
+
+    protected final int P;
+    Boolean symmetric;              // computed on first use
+
+    DistanceMatrix(int P) {
+        this.P = P;
+    }
+
+    /** Matrix over 'flat' (P*P, row-major), in the narrowest storage that holds its range. */
+    public static DistanceMatrix of(int[] flat, int P) {
+        return pack(flat, P, false);
+    }
+
+    /** Collects entries in the given layout; no full matrix is materialised for the triangle. */
+    public static Builder builder(int P, boolean upperTriangle) {
+        return new Builder(P, upperTriangle);
+    }
+
+    /**
+     * Storage width is chosen from the value range: unsigned byte (0..255), unsigned short
+     * (0..65535), else int. Each layout/width pair is its own final class. The sorted distances
+     * of a DistanceIndex are a Full* matrix of the width of their matrix, so with --triangle the
+     * solved matrix (Triangle*) and its index (Full*) are two classes, and get() call sites that
+     * read both are bimorphic; with --ranks the matrix read from the file is a further class
+     * while loading. Call sites that only ever see one matrix stay monomorphic.
+     */
+    static DistanceMatrix pack(int[] d, int P, boolean triangle) {
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int v : d) {
+            if (v < min) min = v;
+            if (v > max) max = v;
+        }
+        if (min >= 0 && max <= 0xFF) {
+            byte[] b = new byte[d.length];
+            for (int i = 0; i < d.length; i++) b[i] = (byte) d[i];
+            return triangle ? new TriangleBytes(b, P) : new FullBytes(b, P);
+        }
+        if (min >= 0 && max <= 0xFFFF) {
+            short[] h = new short[d.length];
+            for (int i = 0; i < d.length; i++) h[i] = (short) d[i];
+            return triangle ? new TriangleShorts(h, P) : new FullShorts(h, P);
+        }
+        return triangle ? new TriangleInts(d, P) : new FullInts(d, P);
+    }
+
+    public final int size() {
+        return P;
+    }
+
+    public abstract int get(int a, int b);
+
+    /** Same matrix with every entry replaced by f(entry), in the same layout. */
+    public final DistanceMatrix map(IntUnaryOperator f) {
+        return pack(Arrays.stream(values()).map(f).toArray(), P, isUpperTriangle());
+    }
+
+    public final boolean isUpperTriangle() {
+        return this instanceof UpperTriangle;
+    }
+
+    public final boolean isSymmetric() {
+        if (symmetric == null) {
+            boolean s = true;
+            for (int a = 0; a < P && s; a++) {
+                for (int b = a + 1; b < P; b++) {
+                    if (get(a, b) != get(b, a)) {
+                        s = false;
+                        break;
+                    }
+                }
+            }
+            symmetric = s;
+        }
+        return symmetric;
+    }
+
+    /** Upper-triangle copy of a symmetric matrix (this instance if it already is one). */
+    public final DistanceMatrix asUpperTriangle() {
+        if (isUpperTriangle()) return this;
+        if (!isSymmetric()) throw new IllegalArgumentException("Upper-triangle storage requires a symmetric distance matrix");
+        Builder b = builder(P, true);
+        for (int a = 0; a < P; a++) {
+            for (int c = a; c < P; c++) b.set(a, c, get(a, c));
+        }
+        return b.build();
+    }
+
+    public final int max() {
+        return Arrays.stream(values()).max().orElse(0);
+    }
+
+    /** Sorted distinct distances, diagonal included. */
+    public final int[] distinctValues() {
+        return Arrays.stream(values()).distinct().sorted().toArray();
+    }
+
+    /** Row-major P*P copy (for APIs that need a plain table, e.g. element constraints). */
+    public final int[] toFlatArray() {
+        int[] flat = new int[P * P];
+        for (int a = 0; a < P; a++) {
+            for (int b = 0; b < P; b++) flat[a * P + b] = get(a, b);
+        }
+        return flat;
+    }
+
+    /**
+     * e.g. "full, 1-byte entries (250000 bytes); neighbour index 750000 bytes". The index is only
+     * built by the models that use it (DistanceGT propagators, --element2d, --prune).
+     */
+    public final String describe() {
+        long entries = isUpperTriangle() ? (long) P * (P + 1) / 2 : (long) P * P;
+        return (isUpperTriangle() ? "upper triangle" : "full") + ", " + entryBytes() + "-byte entries ("
+                + entries * entryBytes() + " bytes); neighbour index " + DistanceIndex.footprint(this) + " bytes";
+    }
+
+    abstract int entryBytes();
+
+    /** Every stored entry once, as ints (the backing array itself for int storage). */
+    abstract int[] values();
+
+    abstract static class Full extends DistanceMatrix {
+        Full(int P) {
+            super(P);
+        }
+    }
+
+    abstract static class UpperTriangle extends DistanceMatrix {
+        final int[] rowStart;   // entry (a, b), a <= b, is at rowStart[a] + b
+
+        UpperTriangle(int P) {
+            super(P);
+            this.rowStart = rowStarts(P);
+            this.symmetric = Boolean.TRUE;
+        }
+
+        static int[] rowStarts(int P) {
+            int[] start = new int[P];
+            int offset = 0;
+            for (int a = 0; a < P; a++) {
+                start[a] = offset - a;
+                offset += P - a;
+            }
+            return start;
+        }
+    }
+
+    static final class FullInts extends Full {
+        private final int[] d;
+
+        FullInts(int[] d, int P) {
+            super(P);
+            this.d = d;
+        }
+
+        @Override
+        public int get(int a, int b) {
+            return d[a * P + b];
+        }
+
+        @Override
+        int entryBytes() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        int[] values() {
+            return d;
+        }
+    }
+
+    static final class FullShorts extends Full {
+        private final short[] d;
+
+        FullShorts(short[] d, int P) {
+            super(P);
+            this.d = d;
+        }
+
+        @Override
+        public int get(int a, int b) {
+            return d[a * P + b] & 0xFFFF;
+        }
+
+        @Override
+        int entryBytes() {
+            return Short.BYTES;
+        }
+
+        @Override
+        int[] values() {
+            int[] v = new int[d.length];
+            for (int i = 0; i < d.length; i++) v[i] = d[i] & 0xFFFF;
+            return v;
+        }
+    }
+
+    static final class FullBytes extends Full {
+        private final byte[] d;
+
+        FullBytes(byte[] d, int P) {
+            super(P);
+            this.d = d;
+        }
+
+        @Override
+        public int get(int a, int b) {
+            return d[a * P + b] & 0xFF;
+        }
+
+        @Override
+        int entryBytes() {
+            return Byte.BYTES;
+        }
+
+        @Override
+        int[] values() {
+            int[] v = new int[d.length];
+            for (int i = 0; i < d.length; i++) v[i] = d[i] & 0xFF;
+            return v;
+        }
+    }
+
+    static final class TriangleInts extends UpperTriangle {
+        private final int[] d;
+
+        TriangleInts(int[] d, int P) {
+            super(P);
+            this.d = d;
+        }
+
+        @Override
+        public int get(int a, int b) {
+            return a <= b ? d[rowStart[a] + b] : d[rowStart[b] + a];
+        }
+
+        @Override
+        int entryBytes() {
+            return Integer.BYTES;
+        }
+
+        @Override
+        int[] values() {
+            return d;
+        }
+    }
+
+    static final class TriangleShorts extends UpperTriangle {
+        private final short[] d;
+
+        TriangleShorts(short[] d, int P) {
+            super(P);
+            this.d = d;
+        }
+
+        @Override
+        public int get(int a, int b) {
+            return (a <= b ? d[rowStart[a] + b] : d[rowStart[b] + a]) & 0xFFFF;
+        }
+
+        @Override
+        int entryBytes() {
+            return Short.BYTES;
+        }
+
+        @Override
+        int[] values() {
+            int[] v = new int[d.length];
+            for (int i = 0; i < d.length; i++) v[i] = d[i] & 0xFFFF;
+            return v;
+        }
+    }
+
+    static final class TriangleBytes extends UpperTriangle {
+        private final byte[] d;
+
+        TriangleBytes(byte[] d, int P) {
+            super(P);
+            this.d = d;
+        }
+
+        @Override
+        public int get(int a, int b) {
+            return (a <= b ? d[rowStart[a] + b] : d[rowStart[b] + a]) & 0xFF;
+        }
+
+        @Override
+        int entryBytes() {
+            return Byte.BYTES;
+        }
+
+        @Override
+        int[] values() {
+            int[] v = new int[d.length];
+            for (int i = 0; i < d.length; i++) v[i] = d[i] & 0xFF;
+            return v;
+        }
+    }
+
+    public static final class Builder {
+        private final int P;
+        private final int[] d;
+        private final int[] rowStart;   // null for the full layout
+
+        private Builder(int P, boolean upperTriangle) {
+            this.P = P;
+            this.rowStart = upperTriangle ? UpperTriangle.rowStarts(P) : null;
+            this.d = new int[upperTriangle ? P * (P + 1) / 2 : P * P];
+        }
+
+        /** Sets entry (a, b); in the triangle layout (a, b) and (b, a) are the same entry. */
+        public Builder set(int a, int b, int v) {
+            if (rowStart == null) d[a * P + b] = v;
+            else if (a <= b) d[rowStart[a] + b] = v;
+            else d[rowStart[b] + a] = v;
+            return this;
+        }
+
+        /** Sets entries (a, b) and (b, a). */
+        public Builder setSymmetric(int a, int b, int v) {
+            set(a, b, v);
+            if (rowStart == null) set(b, a, v);
+            return this;
+        }
+
+        public DistanceMatrix build() {
+            return pack(d, P, rowStart != null);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package org.mysearch.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Constructive warm start for the pDD models.
+ *
+ * Facilities are placed in index order; each one goes to a free location of its (possibly
+ * preprocessed) domain that satisfies d_cons with every facility already placed and is farthest from them (farthest-point
+ * greedy). The first construction is purely greedy; later ones are GRASP constructions that
+ * pick among the RCL best locations at random. Every construction is then improved by
+ * moving a facility of a closest pair to a free location of its domain, as long as (minimum distance,
+ * number of pairs at that minimum) improves.
+ *
+ * Constructions run on 'threads' threads until the time budget is spent.
+ */
+public final class GreedyWarmStart {
+
+    private static final int RCL = 4;     // restricted candidate list size of GRASP constructions
+
+    public static final class Result {
+        public final int[] locations;       // locations[i] = location of facility i
+        public final int value;             // minimum pairwise distance
+        public final long constructions;
+
+        Result(int[] locations, int value, long constructions) {
+            this.locations = locations;
+            this.value = value;
+            this.constructions = constructions;
+        }
+    }
+
+    private final int F, P;
+    private final DistanceMatrix dist;
+    private final int[] dCons;      // flat F*F
+    private final int[] facilityClass;
+    private final int[][] domain;   // domain[i] = sorted locations allowed for facility i
+
+    private GreedyWarmStart(DataReader.DistanceData data) {
+        this.F = data.facilities;
+        this.P = data.points;
+        this.dist = data.distances;
+        this.dCons = data.flatConstraints;
+        this.facilityClass = data.facilityClass;
+        this.domain = new int[F][];
+        for (int i = 0; i < F; i++) domain[i] = data.facilityDomain(i);
+    }
+
+    /** Best solution found within 'budgetMs', or null if no construction satisfied d_cons. */
+    public static Result run(DataReader.DistanceData data, long budgetMs, int threads) {
+        if (data.facilities < 2) return null;
+        GreedyWarmStart ws = new GreedyWarmStart(data);
+        long deadline = System.currentTimeMillis() + budgetMs;
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            tasks.add(() -> ws.search(new Random(seed), seed == 0, deadline));
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Result best = null;
+        long constructions = 0;
+        try {
+            for (Future<Result> f : pool.invokeAll(tasks)) {
+                Result r = f.get();
+                if (r == null) continue;
+                constructions += r.constructions;
+                if (best == null || r.value > best.value) best = r;
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException(e);
+        } finally {
+            pool.shutdown();
+        }
+        return best == null ? null : new Result(ws.canonical(best.locations), best.value, constructions);
+    }
+
+    private Result search(Random rnd, boolean greedyFirst, long deadline) {
+        int[] best = null;
+        int bestValue = -1;
+        long constructions = 0;
+        boolean greedy = greedyFirst;
+        do {
+            int[] loc = construct(rnd, greedy);
+            greedy = false;
+            constructions++;
+            if (loc == null) continue;
+            improve(loc);
+            int value = minPairDistance(loc);
+            if (value > bestValue) {
+                bestValue = value;
+                best = loc;
+            }
+        } while (System.currentTimeMillis() < deadline);
+        return best == null ? null : new Result(best, bestValue, constructions);
+    }
+
+    /** One construction; null if some facility has no location compatible with d_cons. */
+    private int[] construct(Random rnd, boolean greedy) {
+        int[] loc = new int[F];
+        int[] minTo = new int[P];           // minTo[v] = min distance from v to the placed facilities
+        boolean[] used = new boolean[P];
+        Arrays.fill(minTo, Integer.MAX_VALUE);
+
+        int[] rclLoc = new int[RCL];
+        int[] rclVal = new int[RCL];
+        for (int i = 0; i < F; i++) {
+            int v;
+            if (i == 0) {
+                v = greedy ? farthestPairEndpoint(domain[0]) : domain[0][rnd.nextInt(domain[0].length)];
+            } else {
+                int size = 0;
+                for (int c : domain[i]) {
+                    if (used[c] || !compatible(loc, i, c)) continue;
+                    int val = minTo[c];
+                    int limit = greedy ? 1 : RCL;
+                    if (size < limit) {
+                        size++;
+                    } else if (val <= rclVal[size - 1]) {
+                        continue;
+                    }
+                    // Insert c into the RCL (sorted by decreasing distance)
+                    int k = size - 1;
+                    while (k > 0 && rclVal[k - 1] < val) {
+                        rclVal[k] = rclVal[k - 1];
+                        rclLoc[k] = rclLoc[k - 1];
+                        k--;
+                    }
+                    rclVal[k] = val;
+                    rclLoc[k] = c;
+                }
+                if (size == 0) return null;
+                v = rclLoc[greedy ? 0 : rnd.nextInt(size)];
+            }
+            loc[i] = v;
+            used[v] = true;
+            for (int c = 0; c < P; c++) {
+                int d = dist.get(v, c);
+                if (d < minTo[c]) minTo[c] = d;
+            }
+        }
+        return loc;
+    }
+
+    private int farthestPairEndpoint(int[] candidates) {
+        int best = candidates[0], bestDist = Integer.MIN_VALUE;
+        for (int a : candidates) {
+            for (int b = 0; b < P; b++) {
+                if (dist.get(a, b) > bestDist) {
+                    bestDist = dist.get(a, b);
+                    best = a;
+                }
+            }
+        }
+        return best;
+    }
+
+    /** Location c for facility i satisfies d_cons with facilities 0..i-1. */
+    private boolean compatible(int[] loc, int i, int c) {
+        for (int j = 0; j < i; j++) {
+            if (dist.get(loc[j], c) <= dCons[j * F + i]) return false;
+        }
+        return true;
+    }
+
+    /** Pair distance with the (j, i) orientation of the models: dist[F[min]][F[max]]. */
+    private int pairDistance(int[] loc, int i, int j) {
+        return i < j ? dist.get(loc[i], loc[j]) : dist.get(loc[j], loc[i]);
+    }
+
+    private boolean feasibleAt(int[] loc, int i) {
+        for (int j = 0; j < F; j++) {
+            if (j == i) continue;
+            if (loc[j] == loc[i]) return false;
+            int d = pairDistance(loc, i, j);
+            if (d <= dCons[Math.min(i, j) * F + Math.max(i, j)]) return false;
+        }
+        return true;
+    }
+
+    private int minPairDistance(int[] loc) {
+        int dmin = Integer.MAX_VALUE;
+        for (int i = 0; i < F - 1; i++) {
+            for (int j = i + 1; j < F; j++) {
+                dmin = Math.min(dmin, dist.get(loc[i], loc[j]));
+            }
+        }
+        return dmin;
+    }
+
+    private int pairsAt(int[] loc, int d) {
+        int count = 0;
+        for (int i = 0; i < F - 1; i++) {
+            for (int j = i + 1; j < F; j++) {
+                if (dist.get(loc[i], loc[j]) == d) count++;
+            }
+        }
+        return count;
+    }
+
+    /** Relocates facilities of the closest pairs while (min distance, -pairs at min) improves. */
+    private void improve(int[] loc) {
+        if (F < 2) return;
+        boolean[] used = new boolean[P];
+        for (int v : loc) used[v] = true;
+
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int dmin = minPairDistance(loc);
+            int count = pairsAt(loc, dmin);
+            search:
+            for (int i = 0; i < F; i++) {
+                if (!inClosestPair(loc, i, dmin)) continue;
+                int old = loc[i];
+                for (int v : domain[i]) {
+                    if (used[v]) continue;
+                    loc[i] = v;
+                    if (closestTo(loc, i) > dmin && feasibleAt(loc, i)) {
+                        int d = minPairDistance(loc);
+                        if (d > dmin || (d == dmin && pairsAt(loc, d) < count)) {
+                            used[old] = false;
+                            used[v] = true;
+                            improved = true;
+                            break search;
+                        }
+                    }
+                    loc[i] = old;
+                }
+            }
+        }
+    }
+
+    private boolean inClosestPair(int[] loc, int i, int dmin) {
+        return closestTo(loc, i) == dmin;
+    }
+
+    private int closestTo(int[] loc, int i) {
+        int d = Integer.MAX_VALUE;
+        for (int j = 0; j < F; j++) {
+            if (j != i) d = Math.min(d, pairDistance(loc, i, j));
+        }
+        return d;
+    }
+
+    /**
+     * Sorts the locations within each class of interchangeable facilities, so the solution
+     * also satisfies the symmetry-breaking order; kept as is if the sorted copy violates d_cons
+     * or leaves a facility domain.
+     */
+    private int[] canonical(int[] loc) {
+        int[] sorted = loc.clone();
+        for (int c = 0; c < F; c++) {
+            if (facilityClass[c] != c) continue;
+            List<Integer> members = new ArrayList<>();
+            List<Integer> values = new ArrayList<>();
+            for (int i = c; i < F; i++) {
+                if (facilityClass[i] == c) {
+                    members.add(i);
+                    values.add(loc[i]);
+                }
+            }
+            values.sort(null);
+            for (int k = 0; k < members.size(); k++) sorted[members.get(k)] = values.get(k);
+        }
+        for (int i = 0; i < F; i++) {
+            if (!feasibleAt(sorted, i) || Arrays.binarySearch(domain[i], sorted[i]) < 0) return loc;
+        }
+        return minPairDistance(sorted) == minPairDistance(loc) ? sorted : loc;
+    }
+}
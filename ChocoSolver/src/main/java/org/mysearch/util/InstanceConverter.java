@@ -0,0 +1,26 @@
+package org.mysearch.util;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Converts a text instance (P F header, upper-triangle distance triples, d_cons triples)
+ * into the binary instance format read by DataReader.
+ *
+ * Usage: java -cp ChocoSolver.jar org.mysearch.util.InstanceConverter <file> <decimalPoints> [<output>]
+ * The output defaults to <file>.pddb.
+ */
+public class InstanceConverter {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java org.mysearch.util.InstanceConverter <file> <decimalPoints> [<output>]");
+            return;
+        }
+        Path out = Paths.get(args.length > 2 ? args[2] : args[0] + ".pddb");
+        DataReader.DistanceData data = DataReader.readDistanceAndConstraints(args[0], args[1]);
+        DataReader.writeBinary(data, Integer.parseInt(args[1]), out);
+        System.out.println("Wrote " + out + " (decimalPoints=" + args[1] + ")");
+    }
+}
@@ -0,0 +1,42 @@
+package org.mysearch.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataReaderTest {
+
+    // First lines of BINS bins_500_50_div8/0.txt, cut down to 3 points and 2 facilities
+    private static final String HIGH_SCALE_INSTANCE =
+            "3 2\n"
+            + "0 1 2570.357910\n"
+            + "0 2 9081.540039\n"
+            + "1 2 66.30111\n"
+            + "0 1 100.5\n";
+
+    @Test
+    void scaledValueOutsideIntRangeIsRejected(@TempDir Path dir) throws IOException {
+        Path file = Files.writeString(dir.resolve("0.txt"), HIGH_SCALE_INSTANCE);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> DataReader.readDistanceAndConstraints(file.toString(), "6"));
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+        assertTrue(e.getMessage().contains("10^6"), e.getMessage());
+    }
+
+    @Test
+    void highScaleValuesInsideIntRangeAreExact(@TempDir Path dir) throws IOException {
+        Path file = Files.writeString(dir.resolve("0.txt"), HIGH_SCALE_INSTANCE);
+        DataReader.DistanceData data = DataReader.readDistanceAndConstraints(file.toString(), "5");
+        assertEquals(257035791, data.distances.get(0, 1));
+        assertEquals(908154003, data.distances.get(2, 0));
+        assertEquals(6630111, data.distances.get(1, 2));
+        assertEquals(10050000, data.flatConstraints[1]);
+    }
+}